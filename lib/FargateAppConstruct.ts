@@ -14,6 +14,7 @@ import * as ssm from 'aws-cdk-lib/aws-ssm'
 import * as ecr from 'aws-cdk-lib/aws-ecr'
 import * as route53targets from 'aws-cdk-lib/aws-route53-targets'
 import {Duration, StackProps, Stack, RemovalPolicy, CfnOutput} from 'aws-cdk-lib';
+import {BCRYPT_COST} from './sftp-ftps-server/TransferAuthFnConstruct';
 
 
 export interface FargateAppStackProps extends StackProps {
@@ -23,6 +24,7 @@ export interface FargateAppStackProps extends StackProps {
   readonly dbCluster: rds.IDatabaseCluster;
   readonly transferS3Bucket: s3.IBucket;
   readonly transferPublicKeysS3Bucket: s3.IBucket;
+  readonly authSnapshotS3Bucket: s3.IBucket;
     
 }
 
@@ -78,6 +80,8 @@ new ssm.StringParameter(this, "ecr-endpoint", {
     props.transferS3Bucket.grantReadWrite(appTaskRole);
     props.transferS3Bucket.grantDelete(appTaskRole);
     props.transferPublicKeysS3Bucket.grantReadWrite(appTaskRole);
+    // The portal only publishes the auth snapshot; the auth function is the one reader
+    props.authSnapshotS3Bucket.grantPut(appTaskRole);
 
     appTaskRole.addManagedPolicy(iam.ManagedPolicy.fromAwsManagedPolicyName('AWSTransferFullAccess'));
     appTaskRole.addManagedPolicy(iam.ManagedPolicy.fromAwsManagedPolicyName('CloudWatchLogsFullAccess'));
@@ -151,7 +155,13 @@ new ssm.StringParameter(this, "ecr-endpoint", {
         streamPrefix: 'fap-web-app',
         logRetention: 30,
       }),
-    
+      environment: {
+        // New and changed passwords are hashed at the auth function's cost, so logins don't rehash them
+        BCRYPT_COST: String(BCRYPT_COST),
+        // true: browsers upload files straight to S3 with presigned URLs. false: uploads go through the
+        // portal, which streams them into S3 as they arrive
+        S3_DIRECT_UPLOAD: 'true',
+      },
     });
   
     this.fargateService = new ecs.FargateService(this, 'FargateService', {
@@ -2,10 +2,10 @@
 // SPDX-License-Identifier: MIT-0
 import {Construct} from "constructs";
 
-import {Bucket, BucketAccessControl, BucketEncryption, BlockPublicAccess} from "aws-cdk-lib/aws-s3";
+import {Bucket, BucketAccessControl, BucketEncryption, BlockPublicAccess, HttpMethods} from "aws-cdk-lib/aws-s3";
 import {Vpc} from "aws-cdk-lib/aws-ec2";
 import {IHostedZone} from "aws-cdk-lib/aws-route53";
-import {Stack, StackProps, RemovalPolicy} from "aws-cdk-lib";
+import {Stack, StackProps, RemovalPolicy, Duration} from "aws-cdk-lib";
 //import { createHash } from 'crypto';
 import {SecurityGroup, Peer, Port} from "aws-cdk-lib/aws-ec2";
 import {StringParameter} from "aws-cdk-lib/aws-ssm";
@@ -17,6 +17,7 @@ import {StringParameter} from "aws-cdk-lib/aws-ssm";
 export class PrerequisitesConstruct extends Construct {
       public readonly transferS3Bucket: Bucket;
       public readonly transferPublicKeysS3Bucket: Bucket;
+      public readonly authSnapshotS3Bucket: Bucket;
       public readonly hostedZone?: IHostedZone;
       public readonly domainName?: string;
       public readonly dbConnectionSg:SecurityGroup
@@ -36,6 +37,18 @@ export class PrerequisitesConstruct extends Construct {
           blockPublicAccess: BlockPublicAccess.BLOCK_ALL,
           removalPolicy: RemovalPolicy.DESTROY,
           autoDeleteObjects: true,
+          //The web app's browsers upload parts straight to the bucket with presigned URLs, and need the ETag S3 returns for each.
+          cors: [{
+            allowedMethods: [HttpMethods.PUT],
+            allowedOrigins: [`https://filetransferadminportal.${this.node.tryGetContext('DOMAIN_NAME')}`],
+            allowedHeaders: ['*'],
+            exposedHeaders: ['ETag'],
+            maxAge: 3000,
+          }],
+          //Clean up the parts of uploads that a closed browser never completed or aborted.
+          lifecycleRules: [{
+            abortIncompleteMultipartUploadAfter: Duration.days(1),
+          }],
         });
     
     
@@ -49,6 +62,19 @@ export class PrerequisitesConstruct extends Construct {
           autoDeleteObjects: true,
         });
     
+
+        //Create a bucket for the auth snapshot the portal publishes for the auth function. The snapshot holds
+        //every password hash, so only the portal may write it and only the auth function may read it; users'
+        //transfer role gets no access.
+        this.authSnapshotS3Bucket = new Bucket(this, 'authSnapshotS3Bucket', {
+          accessControl: BucketAccessControl.PRIVATE,
+          encryption: BucketEncryption.S3_MANAGED,
+          versioned: false,
+          enforceSSL: true,
+          blockPublicAccess: BlockPublicAccess.BLOCK_ALL,
+          removalPolicy: RemovalPolicy.DESTROY,
+          autoDeleteObjects: true,
+        });
     
         //Store the data bucket name in parameter store
         new StringParameter(this, 'transferS3BucketNameParameter', {
@@ -75,6 +101,12 @@ export class PrerequisitesConstruct extends Construct {
           stringValue: this.transferPublicKeysS3Bucket.bucketArn,
         }).applyRemovalPolicy(RemovalPolicy.DESTROY);
         
+
+        //Store the auth snapshot bucket name in parameter store.
+        new StringParameter(this, 'authSnapshotS3BucketNameParameter', {
+          parameterName: '/Applications/FileTransferAdminPortal/S3-Auth-Snapshot-Bucket-Name',
+          stringValue: this.authSnapshotS3Bucket.bucketName,
+        }).applyRemovalPolicy(RemovalPolicy.DESTROY);
         
         //Store the app's email sender address in parameter store
         new StringParameter(this, 'SenderEmailAddressParameter', {
@@ -0,0 +1,82 @@
+// Uploads a file from the browser straight to S3 in parts, through URLs presigned by the server.
+// The server creates and completes the multipart upload; see DirectS3Upload.java.
+
+// Part URLs are requested this many at a time, so they don't expire before they're used
+const SIGN_BATCH = 20;
+const PART_ATTEMPTS = 3;
+
+window.initDirectS3Upload = function(element, button) {
+  if (element.directUploadInput) {
+    // Attached again after navigating back
+    return;
+  }
+  // Never added to the page, so it can't interfere with the children Vaadin manages
+  const input = document.createElement("input");
+  input.type = "file";
+  element.directUploadInput = input;
+  button.addEventListener("click", () => {
+    input.value = "";
+    input.click();
+  });
+  input.addEventListener("change", () => {
+    const file = input.files[0];
+    if (file) {
+      element.directUploadFile = file;
+      element.$server.fileSelected(file.name, file.size);
+    }
+  });
+};
+
+window.uploadDirectS3Parts = async function(element, partSize, partCount, concurrency) {
+  const file = element.directUploadFile;
+  const batches = new Map();
+  const urlFor = async partNumber => {
+    const batch = Math.floor((partNumber - 1) / SIGN_BATCH);
+    if (!batches.has(batch)) {
+      const first = batch * SIGN_BATCH + 1;
+      batches.set(batch, element.$server.signParts(first, Math.min(SIGN_BATCH, partCount - first + 1)));
+    }
+    const urls = await batches.get(batch);
+    return urls[(partNumber - 1) % SIGN_BATCH];
+  };
+
+  let nextPart = 1;
+  let failed = false;
+  const uploadParts = async () => {
+    while (!failed && nextPart <= partCount) {
+      const partNumber = nextPart++;
+      const body = file.slice((partNumber - 1) * partSize, Math.min(partNumber * partSize, file.size));
+      for (let attempt = 1; ; attempt++) {
+        try {
+          const response = await fetch(await urlFor(partNumber), { method: "PUT", body: body });
+          if (!response.ok) {
+            throw new Error("S3 returned HTTP " + response.status + " for part " + partNumber);
+          }
+          // Only readable if the bucket's CORS configuration exposes it
+          const eTag = response.headers.get("ETag");
+          if (!eTag) {
+            throw new Error("S3 returned no ETag for part " + partNumber);
+          }
+          await element.$server.partUploaded(partNumber, eTag);
+          break;
+        } catch (e) {
+          if (failed || attempt >= PART_ATTEMPTS) {
+            throw e;
+          }
+        }
+      }
+    }
+  };
+
+  try {
+    const workers = [];
+    for (let i = 0; i < Math.min(concurrency, partCount); i++) {
+      workers.push(uploadParts());
+    }
+    await Promise.all(workers);
+    element.$server.uploadFinished();
+  } catch (e) {
+    failed = true;
+    element.$server.uploadFailed(e && e.message ? e.message : String(e));
+  }
+};
@@ -0,0 +1,81 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.example.application;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reads the portal's tuning settings from environment variables. A value that is not a number is
+ * logged and replaced by the default, and one outside the allowed range is logged and clamped, so a
+ * bad setting can't stop a class from loading or overflow a size computed from it.
+ */
+public final class EnvironmentSettings {
+	private final static Logger logger = LogManager.getLogger(EnvironmentSettings.class);
+
+	private EnvironmentSettings() {
+	}
+
+	/**
+	 * @return the variable's value clamped to min..max, or {@code defaultValue} when it is unset, blank
+	 *         or not a number
+	 */
+	public static long getLong(String name, long defaultValue, long min, long max) {
+		String value = System.getenv(name);
+		if (value == null || value.isBlank()) {
+			return defaultValue;
+		}
+		long setting;
+		try {
+			setting = Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warn("Ignoring invalid " + name + "=" + value + ", using " + defaultValue);
+			return defaultValue;
+		}
+		return clamp(name, setting, min, max);
+	}
+
+	/**
+	 * @see #getLong(String, long, long, long)
+	 */
+	public static int getInt(String name, int defaultValue, int min, int max) {
+		return (int) getLong(name, defaultValue, min, max);
+	}
+
+	/**
+	 * @return the variable's value clamped to min..max, or {@code defaultValue} when it is unset, blank
+	 *         or not a number
+	 */
+	public static double getDouble(String name, double defaultValue, double min, double max) {
+		String value = System.getenv(name);
+		if (value == null || value.isBlank()) {
+			return defaultValue;
+		}
+		double setting;
+		try {
+			setting = Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warn("Ignoring invalid " + name + "=" + value + ", using " + defaultValue);
+			return defaultValue;
+		}
+		if (Double.isNaN(setting)) {
+			logger.warn("Ignoring invalid " + name + "=" + value + ", using " + defaultValue);
+			return defaultValue;
+		}
+		if (setting < min || setting > max) {
+			double clamped = Math.max(min, Math.min(max, setting));
+			logger.warn(name + "=" + value + " is outside " + min + ".." + max + ", using " + clamped);
+			return clamped;
+		}
+		return setting;
+	}
+
+	private static long clamp(String name, long setting, long min, long max) {
+		if (setting < min || setting > max) {
+			long clamped = Math.max(min, Math.min(max, setting));
+			logger.warn(name + "=" + setting + " is outside " + min + ".." + max + ", using " + clamped);
+			return clamped;
+		}
+		return setting;
+	}
+}
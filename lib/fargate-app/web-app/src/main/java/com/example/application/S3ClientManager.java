@@ -0,0 +1,229 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.example.application;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.metrics.CoreMetric;
+import software.amazon.awssdk.core.retry.RetryMode;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+
+/**
+ * The web app's S3 client, transfer manager and presigner. Each is created on first use and shared by
+ * every session, so requests reuse pooled, already-handshaken connections and the transfer manager's native
+ * CRT resources are only allocated once. They are static because entities and views outside Spring
+ * reach S3 through {@link Toolkit#getS3Client()}; this bean closes them on shutdown and logs the
+ * connection pool metrics.
+ *
+ * Tuned with environment variables:
+ * S3_MAX_CONNECTIONS (default 50), S3_CONNECTION_TIMEOUT_MS (2000), S3_SOCKET_TIMEOUT_MS (30000),
+ * S3_CONNECTION_ACQUISITION_TIMEOUT_MS (10000), S3_API_CALL_ATTEMPT_TIMEOUT_MS (0, no timeout, so long
+ * downloads aren't cut off), S3_MAX_RETRIES (3), S3_TARGET_THROUGHPUT_GBPS (5), S3_MIN_PART_SIZE_MB (10)
+ * and S3_METRICS_LOG_SECONDS (300; 0 disables the log).
+ */
+@Component
+public class S3ClientManager {
+	private final static Logger logger = LogManager.getLogger(S3ClientManager.class);
+
+	private static final Region REGION = Region.of(System.getenv("AWS_REGION"));
+	private static final PoolMetrics poolMetrics = new PoolMetrics();
+	private static S3Client s3Client;
+	private static S3TransferManager transferManager;
+	private static S3Presigner presigner;
+
+	private ScheduledExecutorService metricsLogger;
+
+	public static synchronized S3Client getS3Client() {
+		if (s3Client == null) {
+			long attemptTimeout = EnvironmentSettings.getLong("S3_API_CALL_ATTEMPT_TIMEOUT_MS", 0, 0,
+					Integer.MAX_VALUE);
+			ClientOverrideConfiguration.Builder overrides = ClientOverrideConfiguration.builder()
+					.retryPolicy(RetryPolicy.builder(RetryMode.STANDARD)
+							.numRetries(EnvironmentSettings.getInt("S3_MAX_RETRIES", 3, 0, 10))
+							.build())
+					.addMetricPublisher(poolMetrics);
+			if (attemptTimeout > 0) {
+				overrides.apiCallAttemptTimeout(Duration.ofMillis(attemptTimeout));
+			}
+			s3Client = S3Client.builder()
+					.region(REGION)
+					.httpClientBuilder(ApacheHttpClient.builder()
+							.maxConnections(EnvironmentSettings.getInt("S3_MAX_CONNECTIONS", 50, 1, 1000))
+							.connectionTimeout(Duration.ofMillis(timeoutSetting("S3_CONNECTION_TIMEOUT_MS", 2000)))
+							.socketTimeout(Duration.ofMillis(timeoutSetting("S3_SOCKET_TIMEOUT_MS", 30000)))
+							.connectionAcquisitionTimeout(
+									Duration.ofMillis(timeoutSetting("S3_CONNECTION_ACQUISITION_TIMEOUT_MS", 10000)))
+							.connectionMaxIdleTime(Duration.ofSeconds(60))
+							.tcpKeepAlive(true))
+					.overrideConfiguration(overrides.build())
+					.build();
+			logger.info("Created shared S3 client");
+		}
+		return s3Client;
+	}
+
+	/**
+	 * The CRT-based transfer manager for large uploads. The throughput target sizes the CRT's connection
+	 * pool, so it should match what the task's network can actually carry.
+	 */
+	public static synchronized S3TransferManager getTransferManager() {
+		if (transferManager == null) {
+			double targetThroughput = EnvironmentSettings.getDouble("S3_TARGET_THROUGHPUT_GBPS", 5, 0.1, 400);
+			long minimumPartSize = EnvironmentSettings.getLong("S3_MIN_PART_SIZE_MB", 10, 5, 5 * 1024) * 1024L * 1024L;
+			transferManager = S3TransferManager.builder()
+					.s3ClientConfiguration(cfg -> cfg
+							.region(REGION)
+							.targetThroughputInGbps(targetThroughput)
+							.minimumPartSizeInBytes(minimumPartSize))
+					.build();
+			logger.info("Created shared S3 transfer manager targeting " + targetThroughput + " Gbps");
+		}
+		return transferManager;
+	}
+
+	/**
+	 * Signs the part URLs that browsers upload to directly. Signing is local, so this makes no calls.
+	 */
+	public static synchronized S3Presigner getPresigner() {
+		if (presigner == null) {
+			presigner = S3Presigner.builder()
+					.region(REGION)
+					.build();
+		}
+		return presigner;
+	}
+
+	/**
+	 * @return the S3 client's connection pool as last reported, with call and retry counts since startup
+	 */
+	public static Map<String, Long> getPoolMetrics() {
+		return poolMetrics.snapshot();
+	}
+
+	/* The Apache client keeps its timeouts as int milliseconds */
+	private static long timeoutSetting(String name, long defaultValue) {
+		return EnvironmentSettings.getLong(name, defaultValue, 1, Integer.MAX_VALUE);
+	}
+
+	@PostConstruct
+	public void startMetricsLog() {
+		long interval = EnvironmentSettings.getLong("S3_METRICS_LOG_SECONDS", 300, 0, 24 * 60 * 60);
+		if (interval <= 0) {
+			return;
+		}
+		metricsLogger = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "s3-pool-metrics");
+			t.setDaemon(true);
+			return t;
+		});
+		metricsLogger.scheduleAtFixedRate(() -> {
+			if (poolMetrics.hasNewCalls()) {
+				logger.info("S3 connection pool " + getPoolMetrics());
+			}
+		}, interval, interval, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void close() {
+		if (metricsLogger != null) {
+			metricsLogger.shutdownNow();
+		}
+		synchronized (S3ClientManager.class) {
+			if (presigner != null) {
+				presigner.close();
+				presigner = null;
+			}
+			if (transferManager != null) {
+				transferManager.close();
+				transferManager = null;
+			}
+			if (s3Client != null) {
+				logger.info("Closing shared S3 client, pool " + getPoolMetrics());
+				s3Client.close();
+				s3Client = null;
+			}
+		}
+	}
+
+	/**
+	 * Keeps the latest connection pool figures the SDK reports for each call.
+	 */
+	private static class PoolMetrics implements MetricPublisher {
+		private final AtomicInteger maxConnections = new AtomicInteger();
+		private final AtomicInteger leasedConnections = new AtomicInteger();
+		private final AtomicInteger availableConnections = new AtomicInteger();
+		private final AtomicInteger pendingAcquires = new AtomicInteger();
+		private final LongAdder acquireNanos = new LongAdder();
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder retries = new LongAdder();
+		private long callsLogged;
+
+		@Override
+		public void publish(MetricCollection metrics) {
+			calls.increment();
+			metrics.metricValues(CoreMetric.RETRY_COUNT).forEach(retries::add);
+			record(metrics);
+		}
+
+		private void record(MetricCollection metrics) {
+			latest(metrics.metricValues(HttpMetric.MAX_CONCURRENCY), maxConnections);
+			latest(metrics.metricValues(HttpMetric.LEASED_CONCURRENCY), leasedConnections);
+			latest(metrics.metricValues(HttpMetric.AVAILABLE_CONCURRENCY), availableConnections);
+			latest(metrics.metricValues(HttpMetric.PENDING_CONCURRENCY_ACQUIRES), pendingAcquires);
+			metrics.metricValues(HttpMetric.CONCURRENCY_ACQUIRE_DURATION).forEach(d -> acquireNanos.add(d.toNanos()));
+			metrics.children().forEach(this::record);
+		}
+
+		private static void latest(List<Integer> values, AtomicInteger target) {
+			if (!values.isEmpty()) {
+				target.set(values.get(values.size() - 1));
+			}
+		}
+
+		private synchronized boolean hasNewCalls() {
+			long total = calls.sum();
+			boolean changed = total != callsLogged;
+			callsLogged = total;
+			return changed;
+		}
+
+		private Map<String, Long> snapshot() {
+			Map<String, Long> snapshot = new LinkedHashMap<>();
+			snapshot.put("maxConnections", (long) maxConnections.get());
+			snapshot.put("leased", (long) leasedConnections.get());
+			snapshot.put("available", (long) availableConnections.get());
+			snapshot.put("pendingAcquires", (long) pendingAcquires.get());
+			snapshot.put("acquireMsTotal", TimeUnit.NANOSECONDS.toMillis(acquireNanos.sum()));
+			snapshot.put("calls", calls.sum());
+			snapshot.put("retries", retries.sum());
+			return snapshot;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
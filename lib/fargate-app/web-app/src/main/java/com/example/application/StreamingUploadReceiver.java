@@ -0,0 +1,85 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.example.application;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.example.application.data.TreeItem;
+import com.example.application.transfer.S3MultipartOutputStream;
+import com.example.application.transfer.TransferEngineS3;
+import com.vaadin.flow.component.upload.Receiver;
+
+/**
+ * Upload receiver for S3 mode that streams a new file into S3 as it arrives, instead of spooling it to
+ * a temp file first (see {@link S3MultipartOutputStream}). A file that would overwrite an existing
+ * object still goes to the {@link UploadBuffer}, so the user can be asked before anything is replaced.
+ * This is the fallback path: by default browsers upload straight to S3 with
+ * {@link com.example.application.views.DirectS3Upload}, and this receiver only runs when
+ * S3_DIRECT_UPLOAD is false (set in FargateAppConstruct.ts).
+ */
+public class StreamingUploadReceiver implements Receiver {
+	private final static Logger logger = LogManager.getLogger(StreamingUploadReceiver.class);
+
+	private final Supplier<TreeItem> folder;
+	private final TransferEngineS3 transferEngine;
+	private final UploadBuffer buffer;
+	private TreeItem streamFolder;
+	private String streamFileName;
+	private S3MultipartOutputStream stream;
+
+	public StreamingUploadReceiver(Supplier<TreeItem> folder, TransferEngineS3 transferEngine, UploadBuffer buffer) {
+		this.folder = folder;
+		this.transferEngine = transferEngine;
+		this.buffer = buffer;
+	}
+
+	@Override
+	public OutputStream receiveUpload(String fileName, String mimeType) {
+		TreeItem target = folder.get();
+		if (Toolkit.objectExists(TransferEngineS3.getKey(target, fileName))) {
+			logger.info(fileName + " exists, buffering it until the overwrite is confirmed");
+			stream = null;
+			return buffer.receiveUpload(fileName, mimeType);
+		}
+		streamFolder = target;
+		streamFileName = fileName;
+		stream = transferEngine.openUploadStream(target, fileName);
+		return stream;
+	}
+
+	/**
+	 * @return true if the last upload was streamed to S3, false if it is in the {@link UploadBuffer}
+	 */
+	public boolean isStreaming() {
+		return stream != null;
+	}
+
+	/**
+	 * Completes the streamed upload once the browser has sent all of it.
+	 *
+	 * @return the key of the new object
+	 */
+	public String complete() throws IOException {
+		try {
+			transferEngine.completeUploadStream(streamFolder, streamFileName, stream);
+			return stream.getKey();
+		} finally {
+			stream = null;
+		}
+	}
+
+	/**
+	 * Discards a streamed upload the browser didn't finish.
+	 */
+	public void abort() {
+		if (stream != null) {
+			stream.abort();
+			stream = null;
+		}
+	}
+}
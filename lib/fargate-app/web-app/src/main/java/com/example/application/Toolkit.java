@@ -15,10 +15,9 @@ import java.util.Properties;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import com.example.application.security.AuthTokenProvider;
+
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.rds.RdsUtilities;
-import software.amazon.awssdk.services.rds.model.GenerateAuthenticationTokenRequest;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.ListObjectsRequest;
 import software.amazon.awssdk.services.s3.model.ListObjectsResponse;
@@ -34,11 +33,13 @@ public class Toolkit {
 	public static String SFTP_ENDPOINT;
 	public static String CUSTOM_HOSTNAME;
 	public static String RESOURCE_BUCKET;
+	public static String AUTH_SNAPSHOT_BUCKET;
 	public static String RDS_ENDPOINT;
 	//public static String RDS_USERNAME;
 	//public static String RDS_PASSWORD;
 	public static String CLOUDWATCH_VPC_ENDPOINT;
-	private static int workload = 12;
+	/* Set from the same CDK constant as the transfer auth Lambda's, which rehashes other costs on login */
+	private static int workload = EnvironmentSettings.getInt("BCRYPT_COST", 12, 4, 16);
 	public static String TRANSFER_CLOUDWATCH_LOGGROUP_NAME;
 	private static String SSM_VPC_ENDPOINT;
 	public static final String ENROLLMENT_EMAIL_SUBJECT = "Welcome to the Transfer Family Portal";
@@ -69,6 +70,7 @@ public class Toolkit {
 			.build();
 
 	private static boolean initialized = false;
+	private static AuthTokenProvider authTokenProvider;
 	public static final String mysqldriver = "com.mysql.cj.jdbc.Driver";
 
 	public static void init() {
@@ -113,10 +115,11 @@ public class Toolkit {
 		return date;
 	}
 
+	/**
+	 * @return the shared S3 client; callers must not close it
+	 */
 	public static S3Client getS3Client() {
-		S3Client s3Client = S3Client.builder().region(REGION)
-				.build();
-		return s3Client;
+		return S3ClientManager.getS3Client();
 	}
 
 	public static String hashPassword(String password) {
@@ -124,12 +127,16 @@ public class Toolkit {
 		return BCrypt.hashpw(password, salt);
 	}
 	
+	/**
+	 * Accepts $2a$, $2b$ and $2y$ hashes. jBCrypt only parses $2a$, but for it the three
+	 * revisions compute the same hash.
+	 */
 	public static boolean checkPassword(String loginPassword, String hashedPassword) {
 		boolean valid = false;
-		if (hashedPassword==null || !hashedPassword.startsWith("$2a$")) {
+		if (hashedPassword==null || !hashedPassword.matches("\\$2[aby]\\$\\d\\d\\$.{53}")) {
 			return false;
 		}
-		valid = BCrypt.checkpw(loginPassword, hashedPassword);
+		valid = BCrypt.checkpw(loginPassword, "$2a$" + hashedPassword.substring(4));
 		return valid;
 	}
 
@@ -173,12 +180,14 @@ public class Toolkit {
 			SFTP_ENDPOINT = parameterMap.get("/Applications/FileTransferAdminPortal/SFTP-Endpoint");
 			CUSTOM_HOSTNAME = parameterMap.get("/Applications/FileTransferAdminPortal/Custom-Hostname");
 			RESOURCE_BUCKET = parameterMap.get("/Applications/FileTransferAdminPortal/S3-Keypair-Bucket-Name");
+			AUTH_SNAPSHOT_BUCKET = parameterMap.get("/Applications/FileTransferAdminPortal/S3-Auth-Snapshot-Bucket-Name");
 			RDS_ENDPOINT = parameterMap.get("/Applications/FileTransferAdminPortal/rds_endpoint");
 			//RDS_USERNAME = parameterMap.get("/Applications/FileTransferAdminPortal/rds-lambda-username");
 			//RDS_PASSWORD = parameterMap.get("/Applications/FileTransferAdminPortal/rds-lambda-password");
 			CLOUDWATCH_VPC_ENDPOINT = parameterMap.get("/Applications/FileTransferAdminPortal/Cloudwatch-VPC-Endpoint");
 			TRANSFER_CLOUDWATCH_LOGGROUP_NAME = parameterMap.get("/Applications/FileTransferAdminPortal/TransferLogGroupName");
 			SENDER = parameterMap.get("/Applications/FileTransferAdminPortal/sender-email-address");
+			authTokenProvider = new AuthTokenProvider(RDS_ENDPOINT, 3306, "svc_fap", REGION);
 
 			
 			
@@ -200,18 +209,8 @@ public class Toolkit {
     }
     
     private static String generateAuthToken() {
-		 init();
-		 GenerateAuthenticationTokenRequest request = GenerateAuthenticationTokenRequest
-				 .builder()
-				 .hostname(RDS_ENDPOINT)
-				 .port(3306)
-				 .username("svc_fap")
-				 .credentialsProvider(DefaultCredentialsProvider.create())
-				 .region(REGION)
-				 .build();
-		 	String token = RdsUtilities.builder().build().generateAuthenticationToken(request);
-		 	return token;
-	
-	    }
+		init();
+		return authTokenProvider.getToken();
+	}
     
 }
@@ -6,7 +6,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
@@ -24,14 +26,12 @@ public class AppUserDAO {
 
 	@Autowired
 	private DataSourceImpl dataSource;
-	// @Autowired
-	private OrganizationDAO organizationDAO;
+	@Autowired
+	private AuthSnapshotPublisher authSnapshotPublisher;
+	@Autowired
+	private PortalCache portalCache;
 	private final static Logger logger = LogManager.getLogger(AppUserDAO.class);
 
-	public AppUserDAO(@Autowired OrganizationDAO organizationDAO) {
-		this.organizationDAO = organizationDAO;
-	}
-
 	/***
 	 * Check if the given username exists. This is an important validation step in
 	 * creating a new user.
@@ -67,55 +67,20 @@ public class AppUserDAO {
 	 */
 
 	public AppUser getAppUser(String username) {
-		String sql = "Select id, firstName, lastName, username, email, enabled, password, passwordExpiration, role, organizationId ";
-		sql += "FROM AppUser WHERE username = ?";
-		AppUser user = null;
-		try (
-				Connection con = dataSource.getConnection();
-				PreparedStatement ps = con.prepareStatement(sql);
-
-		) {
-			ps.setString(1, username);
-			try (ResultSet rs = ps.executeQuery()) {
-				while (rs.next()) {
-					user = new AppUser(
-							rs.getLong("id"),
-							rs.getString("firstName"),
-							rs.getString("lastName"),
-							rs.getString("username"),
-							rs.getString("email"),
-							rs.getBoolean("enabled"),
-							rs.getString("password"),
-							Role.getAppRole(rs.getString("role")),
-							rs.getTimestamp("passwordExpiration").toLocalDateTime(),
-							this.organizationDAO.getOrganization(rs.getLong("organizationId")));
-				}
+		AppUser user = portalCache.getSnapshot().getAppUser(username);
+		if (user != null) {
+			/* The cached user is shared by every session, so callers get their own copy to change */
+			user = new AppUser(user);
+		} else {
+			/* Possibly added by another portal task since the cache was loaded */
+			try {
+				user = AppUserLoader.load(dataSource, username);
+			} catch (SQLException e) {
+				logger.error(e.getMessage());
 			}
-		} catch (SQLException e) {
-			logger.error(e.getMessage());
-		}
-
-		sql = "SELECT id as directoryMappingId, entry, target, `write` ";
-		sql += "FROM directoryMapping WHERE userId = ?";
-		try (
-				// Connection con = Toolkit.getRcdmsConnection();
-				Connection con = dataSource.getConnection();
-				PreparedStatement ps = con.prepareStatement(sql);) {
-			ps.setLong(1, user.getId());
-			try (ResultSet rs = ps.executeQuery()) {
-				while (rs.next()) {
-					DirectoryMapping mapping = new DirectoryMapping(
-							rs.getLong("directoryMappingId"),
-							user.getId(),
-							rs.getString("entry"),
-							rs.getString("target"),
-							rs.getBoolean("write"));
-					user.getDirectoryMappings().put(mapping.getDirectoryMappingId(), mapping);
-				}
+			if (user != null) {
+				portalCache.invalidate();
 			}
-
-		} catch (SQLException e) {
-			logger.error(e.getMessage());
 		}
 
 		if (user == null) {
@@ -126,223 +91,74 @@ public class AppUserDAO {
 		return user;
 	}
 
-	
-	public static AppUser getAppUserStatic(String username) {
-		String sql = "Select id, firstName, lastName, username, email, enabled, password, passwordExpiration, role, organizationId ";
-		sql += "FROM AppUser WHERE username = ?";
-		AppUser user = null;
-		DataSourceImpl dataSource = new DataSourceImpl();
-		try (
-				Connection con = dataSource.getConnection();
-				PreparedStatement ps = con.prepareStatement(sql);
+	/**
+	 * All users, indexed by id: a read-only view of the {@link PortalCache}'s snapshot, shared by every
+	 * session. The users in it must not be changed; get a copy to edit from {@link #getAppUser(String)}.
+	 */
+	public Map<Long, AppUser> getAppUsers() {
+		return portalCache.getSnapshot().getAppUsers();
+	}
 
-		) {
-			ps.setString(1, username);
-			try (ResultSet rs = ps.executeQuery()) {
-				while (rs.next()) {
-					user = new AppUser(
-							rs.getLong("id"),
-							rs.getString("firstName"),
-							rs.getString("lastName"),
-							rs.getString("username"),
-							rs.getString("email"),
-							rs.getBoolean("enabled"),
-							rs.getString("password"),
-							Role.getAppRole(rs.getString("role")),
-							rs.getTimestamp("passwordExpiration").toLocalDateTime(),
-							OrganizationDAO.getOrganizationStatic(rs.getLong("organizationId")));
-				}
-			}
+	
+	/**
+	 * One page of users for a lazy grid, searched, sorted and paged in the database. See
+	 * {@link AppUserLoader#loadPage}.
+	 */
+	public List<AppUser> findAppUsers(String searchTerm, boolean enabledOnly, List<AppUserLoader.SortOrder> sortOrders,
+			int offset, int limit) {
+		try {
+			return AppUserLoader.loadPage(dataSource, searchTerm, enabledOnly, sortOrders, offset, limit);
 		} catch (SQLException e) {
 			logger.error(e.getMessage());
+			return new ArrayList<>();
 		}
+	}
 
-		sql = "SELECT id as directoryMappingId, entry, target, `write` ";
-		sql += "FROM directoryMapping WHERE userId = ?";
-		try (
-				// Connection con = Toolkit.getRcdmsConnection();
-				Connection con = dataSource.getConnection();
-				PreparedStatement ps = con.prepareStatement(sql);) {
-			ps.setLong(1, user.getId());
-			try (ResultSet rs = ps.executeQuery()) {
-				while (rs.next()) {
-					DirectoryMapping mapping = new DirectoryMapping(
-							rs.getLong("directoryMappingId"),
-							user.getId(),
-							rs.getString("entry"),
-							rs.getString("target"),
-							rs.getBoolean("write"));
-					user.getDirectoryMappings().put(mapping.getDirectoryMappingId(), mapping);
-				}
-			}
-
+	public int countAppUsers(String searchTerm, boolean enabledOnly) {
+		try {
+			return AppUserLoader.count(dataSource, searchTerm, enabledOnly);
 		} catch (SQLException e) {
 			logger.error(e.getMessage());
+			return 0;
 		}
-
-		if (user == null) {
-			throw new NullPointerException("User " + username
-					+ " returned a null.  Either the user couldn't be found or there's a database connectivity issue");
-		}
-
-		return user;
-	}
-	
-	public Map<Long, AppUser> userMap = null;
-
-	public Map<Long, AppUser> getAppUsers(boolean forceRefresh) {
-		if (userMap == null || forceRefresh) {
-			loadAppUsers();
-		}
-
-		return userMap;
 	}
 
-	
 	public void deactivateAllUsers(Organization org) {
-		if (userMap!=null) {
-			userMap.values().stream().filter(user->user.getOrganization().getId()==org.getId()).forEach(user->user.setEnabled(false));
-		}
 		String sql = "UPDATE AppUser SET enabled = 0 WHERE organizationId = ?";
 		try (
 				Connection con = dataSource.getConnection();
 				PreparedStatement ps = con.prepareStatement(sql);) {
-				ps.setLong(1, org.getId());
-				ps.executeUpdate();
-				
-		} catch(SQLException f) {
+			ps.setLong(1, org.getId());
+			ps.executeUpdate();
+		} catch (SQLException f) {
 			logger.error(f.getMessage());
 		}
-		
-	}
-	public static Map<Long, AppUser> loadAppUsersStatic() {
-		Map<Long, AppUser> userMap = new HashMap<>();
-		logger.info("Loading app users");
-		String sql = "Select id, firstName, lastName, username, email, enabled, password, passwordExpiration, role, organizationId ";
-		sql += "FROM AppUser";
-		DataSourceImpl dataSource = new DataSourceImpl();
-		
-		try (
-				// Connection con = Toolkit.getRcdmsConnection();
-				Connection con = dataSource.getConnection();
-				PreparedStatement ps = con.prepareStatement(sql);
-				ResultSet rs = ps.executeQuery();) {
-			while (rs.next()) {
-				AppUser user = new AppUser(
-						rs.getLong("id"),
-						rs.getString("firstName"),
-						rs.getString("lastName"),
-						rs.getString("username"),
-						rs.getString("email"),
-						rs.getBoolean("enabled"),
-						rs.getString("password"),
-						Role.getAppRole(rs.getString("role")),
-						rs.getTimestamp("passwordExpiration").toLocalDateTime(),
-						OrganizationDAO.getOrganizationStatic(rs.getLong("organizationId")));
-				if (user.getOrganization()==null) {
-					logger.error("Organization null for user " + user.getUsername());
-					System.exit(1);
-				}
-				userMap.put(user.getId(), user);
-
-			}
-		} catch (SQLException e) {
-			logger.error(e.getMessage());
-		}
+		portalCache.invalidate();
+		authSnapshotPublisher.requestPublish();
 
-		sql = "SELECT id as directoryMappingId, userId, entry, target, `read`, `write` FROM directoryMapping";
-		try (
-				// Connection con = Toolkit.getRcdmsConnection();
-				Connection con = dataSource.getConnection();
-				PreparedStatement ps = con.prepareStatement(sql);
-				ResultSet rs = ps.executeQuery();) {
-
-			while (rs.next()) {
-				long userId = rs.getLong("userId");
-				DirectoryMapping mapping = new DirectoryMapping(
-						rs.getLong("directoryMappingId"),
-						userId,
-						rs.getString("entry"),
-						rs.getString("target"),
-						rs.getBoolean("write")
-
-				);
-				userMap.get(userId).getDirectoryMappings().put(mapping.getDirectoryMappingId(), mapping);
-			}
-
-		} catch (SQLException e) {
-			logger.error(e.getMessage());
-		}
-
-		 return userMap;
 	}
 
-	
-	
 	/**
-	 * Load all users.
-	 * 
-	 * @return - Map of all users indexed by id.
+	 * Sets the user's password hash and expiration in the database, and then on the user.
+	 *
+	 * @throws SQLException if the database wasn't updated; the user is left unchanged
 	 */
-	private void loadAppUsers() {
-		userMap = new HashMap<>();
-		logger.info("Loading app users");
-		String sql = "Select id, firstName, lastName, username, email, enabled, password, passwordExpiration, role, organizationId ";
-		sql += "FROM AppUser";
-
+	public void updatePassword(AppUser user, String passwordHash, LocalDateTime passwordExpiration)
+			throws SQLException {
+		String sql = "UPDATE AppUser SET password = ?, passwordExpiration = ? WHERE id = ?";
 		try (
-				// Connection con = Toolkit.getRcdmsConnection();
 				Connection con = dataSource.getConnection();
-				PreparedStatement ps = con.prepareStatement(sql);
-				ResultSet rs = ps.executeQuery();) {
-			while (rs.next()) {
-				AppUser user = new AppUser(
-						rs.getLong("id"),
-						rs.getString("firstName"),
-						rs.getString("lastName"),
-						rs.getString("username"),
-						rs.getString("email"),
-						rs.getBoolean("enabled"),
-						rs.getString("password"),
-						Role.getAppRole(rs.getString("role")),
-						rs.getTimestamp("passwordExpiration").toLocalDateTime(),
-						organizationDAO.getOrganization(rs.getLong("organizationId")));
-				if (user.getOrganization()==null) {
-					logger.error("Organization null for user " + user.getUsername());
-					System.exit(1);
-				}
-				userMap.put(user.getId(), user);
-
-			}
-		} catch (SQLException e) {
-			logger.error(e.getMessage());
-		}
-
-		sql = "SELECT id as directoryMappingId, userId, entry, target, `read`, `write` FROM directoryMapping";
-		try (
-				// Connection con = Toolkit.getRcdmsConnection();
-				Connection con = dataSource.getConnection();
-				PreparedStatement ps = con.prepareStatement(sql);
-				ResultSet rs = ps.executeQuery();) {
-
-			while (rs.next()) {
-				long userId = rs.getLong("userId");
-				DirectoryMapping mapping = new DirectoryMapping(
-						rs.getLong("directoryMappingId"),
-						userId,
-						rs.getString("entry"),
-						rs.getString("target"),
-						rs.getBoolean("write")
-
-				);
-				userMap.get(userId).getDirectoryMappings().put(mapping.getDirectoryMappingId(), mapping);
-			}
-
-		} catch (SQLException e) {
-			logger.error(e.getMessage());
+				PreparedStatement ps = con.prepareStatement(sql);) {
+			ps.setString(1, passwordHash);
+			ps.setTimestamp(2, java.sql.Timestamp.valueOf(passwordExpiration));
+			ps.setLong(3, user.getId());
+			ps.executeUpdate();
 		}
-
-		// return userMap;
+		user.setPassword(passwordHash);
+		user.setPasswordExpiration(passwordExpiration);
+		logger.info("Updated password of user " + user.getUsername());
+		portalCache.invalidate();
+		authSnapshotPublisher.requestPublish();
 	}
 
 	public void update(AppUser user) {
@@ -371,6 +187,8 @@ public class AppUserDAO {
 		} catch (SQLException e) {
 			logger.error(e.getMessage());
 		}
+		portalCache.invalidate();
+		authSnapshotPublisher.requestPublish();
 	}
 
 	public void update(DirectoryMapping directoryMapping) {
@@ -386,6 +204,8 @@ public class AppUserDAO {
 		} catch (SQLException e) {
 			logger.error(e.getMessage());
 		}
+		portalCache.invalidate();
+		authSnapshotPublisher.requestPublish();
 
 	}
 
@@ -415,9 +235,8 @@ public class AppUserDAO {
 		} catch (SQLException e) {
 			logger.error(e.getMessage());
 		}
-		if (userMap != null) {
-			this.userMap.put(user.getId(), user);
-		}
+		portalCache.invalidate();
+		authSnapshotPublisher.requestPublish();
 	}
 
 	public void insertToDb(DirectoryMapping directoryMapping) {
@@ -439,6 +258,8 @@ public class AppUserDAO {
 		} catch (SQLException e) {
 			logger.error(e.getMessage());
 		}
+		portalCache.invalidate();
+		authSnapshotPublisher.requestPublish();
 	}
 
 	public void deleteUserDirectoryMapping(AppUser user, long directoryMappingId) {
@@ -450,11 +271,13 @@ public class AppUserDAO {
 				PreparedStatement ps = con.prepareStatement(sql);) {
 			ps.setLong(1, directoryMappingId);
 			ps.executeUpdate();
+			user.getDirectoryMappings().remove(directoryMappingId);
 		} catch (SQLException e) {
 			logger.error(e.getMessage());
 		}
 
-		user.getDirectoryMappings().remove(directoryMappingId);
+		portalCache.invalidate();
+		authSnapshotPublisher.requestPublish();
 
 		logger.info("Deletion of directory mapping complete");
 
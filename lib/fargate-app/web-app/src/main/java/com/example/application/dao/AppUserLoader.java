@@ -0,0 +1,284 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.example.application.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import com.example.application.data.AppUser;
+import com.example.application.data.DirectoryMapping;
+import com.example.application.data.Organization;
+import com.example.application.data.Role;
+
+/**
+ * Loads users together with their organizations and directory mappings. However many users
+ * there are, it runs two queries on one connection: AppUser joined with organization, then the
+ * directory mappings. The object graph is put together in memory, and users in the same
+ * organization share one {@link Organization} instance.
+ *
+ * For lazy grids, {@link #loadPage} and {@link #count} run the search, sorting, offset and limit
+ * in SQL, so only the visible page of users is read. The search is a prefix match, which lets
+ * MySQL use the AppUser indexes.
+ */
+public class AppUserLoader {
+
+	private static final String USER_SQL = "SELECT u.id, u.firstName, u.lastName, u.username, u.email, u.enabled, "
+			+ "u.password, u.passwordExpiration, u.role, u.organizationId, "
+			+ "o.description AS organizationDescription, o.active AS organizationActive "
+			+ "FROM AppUser u JOIN organization o ON o.id = u.organizationId";
+	private static final String MAPPING_SQL = "SELECT id AS directoryMappingId, userId, entry, target, `write` "
+			+ "FROM directoryMapping";
+	private static final String ORGANIZATION_SQL = "SELECT id, description, active FROM organization";
+	private static final String COUNT_SQL = "SELECT count(*) AS mycount FROM AppUser u";
+
+	/* Sort properties a grid may ask for, and the columns they sort on */
+	private static final Map<String, List<String>> SORT_COLUMNS = Map.of(
+			"name", List.of("u.firstName", "u.lastName"),
+			"username", List.of("u.username"),
+			"email", List.of("u.email"),
+			"role", List.of("u.role"),
+			"enabled", List.of("u.enabled"),
+			"organization", List.of("o.description"));
+
+	/**
+	 * A sort property, one of name, username, email, role, enabled or organization, and its direction.
+	 */
+	public static class SortOrder {
+		private final String property;
+		private final boolean ascending;
+
+		public SortOrder(String property, boolean ascending) {
+			this.property = property;
+			this.ascending = ascending;
+		}
+	}
+
+	private AppUserLoader() {
+	}
+
+	/**
+	 * @return every user, indexed by id
+	 */
+	public static Map<Long, AppUser> loadAll(DataSource dataSource) throws SQLException {
+		try (Connection con = dataSource.getConnection()) {
+			return loadAll(con, new HashMap<>());
+		}
+	}
+
+	/**
+	 * @param organizations organizations already loaded, which users are given instead of new instances; any
+	 *                      others found are added
+	 * @return every user, indexed by id
+	 */
+	public static Map<Long, AppUser> loadAll(Connection con, Map<Long, Organization> organizations)
+			throws SQLException {
+		Map<Long, AppUser> users = new HashMap<>();
+		try (
+				PreparedStatement ps = con.prepareStatement(USER_SQL);
+				ResultSet rs = ps.executeQuery();) {
+			readUsers(rs, users, organizations);
+		}
+		try (
+				PreparedStatement ps = con.prepareStatement(MAPPING_SQL);
+				ResultSet rs = ps.executeQuery();) {
+			readMappings(rs, users);
+		}
+		return users;
+	}
+
+	/**
+	 * @return every organization, including those without users, indexed by id
+	 */
+	public static Map<Long, Organization> loadOrganizations(Connection con) throws SQLException {
+		Map<Long, Organization> organizations = new HashMap<>();
+		try (
+				PreparedStatement ps = con.prepareStatement(ORGANIZATION_SQL);
+				ResultSet rs = ps.executeQuery();) {
+			while (rs.next()) {
+				Organization org = new Organization(rs.getLong("id"), rs.getString("description"),
+						rs.getBoolean("active"));
+				organizations.put(org.getId(), org);
+			}
+		}
+		return organizations;
+	}
+
+	/**
+	 * @return the user with the username, or null if there is none
+	 */
+	public static AppUser load(DataSource dataSource, String username) throws SQLException {
+		Map<Long, AppUser> users = new HashMap<>();
+		try (Connection con = dataSource.getConnection()) {
+			try (PreparedStatement ps = con.prepareStatement(USER_SQL + " WHERE u.username = ?")) {
+				ps.setString(1, username);
+				try (ResultSet rs = ps.executeQuery()) {
+					readUsers(rs, users, new HashMap<>());
+				}
+			}
+			if (users.isEmpty()) {
+				return null;
+			}
+			AppUser user = users.values().iterator().next();
+			try (PreparedStatement ps = con.prepareStatement(MAPPING_SQL + " WHERE userId = ?")) {
+				ps.setLong(1, user.getId());
+				try (ResultSet rs = ps.executeQuery()) {
+					readMappings(rs, users);
+				}
+			}
+			return user;
+		}
+	}
+
+	/**
+	 * @param searchTerm  matched against the start of the username, first name, last name, email or full
+	 *                    name, ignoring case; null or blank matches everyone
+	 * @param enabledOnly whether to leave out disabled users
+	 * @return one page of matching users with their directory mappings, in the given order and then by id
+	 */
+	public static List<AppUser> loadPage(DataSource dataSource, String searchTerm, boolean enabledOnly,
+			List<SortOrder> sortOrders, int offset, int limit) throws SQLException {
+		List<String> parameters = new ArrayList<>();
+		String sql = USER_SQL + where(searchTerm, enabledOnly, parameters) + orderBy(sortOrders) + " LIMIT ? OFFSET ?";
+		Map<Long, AppUser> users = new LinkedHashMap<>();
+		try (Connection con = dataSource.getConnection()) {
+			try (PreparedStatement ps = con.prepareStatement(sql)) {
+				int i = 1;
+				for (String parameter : parameters) {
+					ps.setString(i++, parameter);
+				}
+				ps.setInt(i++, limit);
+				ps.setInt(i, offset);
+				try (ResultSet rs = ps.executeQuery()) {
+					readUsers(rs, users, new HashMap<>());
+				}
+			}
+			if (users.isEmpty()) {
+				return Collections.emptyList();
+			}
+			String placeholders = users.keySet().stream().map(id -> "?").collect(Collectors.joining(","));
+			try (PreparedStatement ps = con.prepareStatement(MAPPING_SQL + " WHERE userId IN (" + placeholders + ")")) {
+				int i = 1;
+				for (long id : users.keySet()) {
+					ps.setLong(i++, id);
+				}
+				try (ResultSet rs = ps.executeQuery()) {
+					readMappings(rs, users);
+				}
+			}
+		}
+		return new ArrayList<>(users.values());
+	}
+
+	/**
+	 * @return the number of users {@link #loadPage} can return for the search
+	 */
+	public static int count(DataSource dataSource, String searchTerm, boolean enabledOnly) throws SQLException {
+		List<String> parameters = new ArrayList<>();
+		String sql = COUNT_SQL + where(searchTerm, enabledOnly, parameters);
+		try (
+				Connection con = dataSource.getConnection();
+				PreparedStatement ps = con.prepareStatement(sql);) {
+			for (int i = 0; i < parameters.size(); i++) {
+				ps.setString(i + 1, parameters.get(i));
+			}
+			try (ResultSet rs = ps.executeQuery()) {
+				rs.next();
+				return rs.getInt("mycount");
+			}
+		}
+	}
+
+	private static String where(String searchTerm, boolean enabledOnly, List<String> parameters) {
+		List<String> conditions = new ArrayList<>();
+		if (enabledOnly) {
+			conditions.add("u.enabled = 1");
+		}
+		String term = searchTerm == null ? "" : searchTerm.trim();
+		if (!term.isEmpty()) {
+			String prefix = escapeLike(term) + "%";
+			String match = "u.username LIKE ? OR u.firstName LIKE ? OR u.lastName LIKE ? OR u.email LIKE ?";
+			parameters.addAll(List.of(prefix, prefix, prefix, prefix));
+			int space = term.indexOf(' ');
+			if (space > 0) {
+				/* "Jane Do" matches Jane Doe by first and last name */
+				match += " OR (u.firstName = ? AND u.lastName LIKE ?)";
+				parameters.add(term.substring(0, space));
+				parameters.add(escapeLike(term.substring(space + 1).trim()) + "%");
+			}
+			conditions.add("(" + match + ")");
+		}
+		return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+	}
+
+	private static String orderBy(List<SortOrder> sortOrders) {
+		List<String> columns = new ArrayList<>();
+		for (SortOrder order : sortOrders) {
+			List<String> sortColumns = SORT_COLUMNS.get(order.property);
+			if (sortColumns != null) {
+				sortColumns.forEach(column -> columns.add(column + (order.ascending ? " ASC" : " DESC")));
+			}
+		}
+		/* Rows with equal sort keys must come back in the same order on every page */
+		columns.add("u.id");
+		return " ORDER BY " + String.join(", ", columns);
+	}
+
+	private static String escapeLike(String value) {
+		return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+	}
+
+	private static void readUsers(ResultSet rs, Map<Long, AppUser> users, Map<Long, Organization> organizations)
+			throws SQLException {
+		while (rs.next()) {
+			long organizationId = rs.getLong("organizationId");
+			Organization organization = organizations.get(organizationId);
+			if (organization == null) {
+				organization = new Organization(organizationId, rs.getString("organizationDescription"),
+						rs.getBoolean("organizationActive"));
+				organizations.put(organizationId, organization);
+			}
+			Timestamp passwordExpiration = rs.getTimestamp("passwordExpiration");
+			AppUser user = new AppUser(
+					rs.getLong("id"),
+					rs.getString("firstName"),
+					rs.getString("lastName"),
+					rs.getString("username"),
+					rs.getString("email"),
+					rs.getBoolean("enabled"),
+					rs.getString("password"),
+					Role.getAppRole(rs.getString("role")),
+					passwordExpiration == null ? null : passwordExpiration.toLocalDateTime(),
+					organization);
+			users.put(user.getId(), user);
+		}
+	}
+
+	private static void readMappings(ResultSet rs, Map<Long, AppUser> users) throws SQLException {
+		while (rs.next()) {
+			AppUser user = users.get(rs.getLong("userId"));
+			/* A user added after the user query ran */
+			if (user == null) {
+				continue;
+			}
+			DirectoryMapping mapping = new DirectoryMapping(
+					rs.getLong("directoryMappingId"),
+					user.getId(),
+					rs.getString("entry"),
+					rs.getString("target"),
+					rs.getBoolean("write"));
+			user.getDirectoryMappings().put(mapping.getDirectoryMappingId(), mapping);
+		}
+	}
+}
@@ -0,0 +1,204 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.example.application.dao;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.application.Toolkit;
+import com.example.application.dao.AuthSnapshotWriter.SnapshotMapping;
+import com.example.application.dao.AuthSnapshotWriter.SnapshotUser;
+import com.example.application.security.DataSourceImpl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+/**
+ * Publishes the auth snapshot the transfer auth Lambda authenticates from, so logins don't
+ * need a database round-trip. The snapshot holds every password hash, so it goes to its own
+ * bucket, which the portal can only write and only the Lambda can read.
+ * DAOs call {@link #requestPublish()} after every change to users, mappings or keys; changes
+ * made within a couple of seconds of each other are published together. The snapshot is also
+ * republished periodically so the Lambda can tell a quiet portal from one that stopped publishing.
+ */
+@Component
+public class AuthSnapshotPublisher {
+	private final static Logger logger = LogManager.getLogger(AuthSnapshotPublisher.class);
+
+	public static final String SNAPSHOT_KEY = System.getenv("AUTH_SNAPSHOT_KEY") == null
+			? "auth-snapshot.bin"
+			: System.getenv("AUTH_SNAPSHOT_KEY");
+	private static final long DEBOUNCE_SECONDS = 2;
+	private static final long REPUBLISH_SECONDS = 300;
+	private static final String SQL = "SELECT a.id, a.username, a.password, a.passwordExpiration, "
+			+ "m.id AS directoryMappingId, m.entry, m.target, m.`write` "
+			+ "FROM AppUser a LEFT JOIN directoryMapping m ON m.userId = a.id "
+			+ "WHERE a.enabled = 1 ORDER BY a.id, m.id";
+
+	@Autowired
+	private DataSourceImpl dataSource;
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "auth-snapshot-publisher");
+		t.setDaemon(true);
+		return t;
+	});
+	private final AtomicBoolean publishPending = new AtomicBoolean(false);
+	/* Public key text by object key, reused while the ETag is unchanged; only touched on the executor thread */
+	private Map<String, CachedKey> publicKeyCache = new HashMap<>();
+
+	private static class CachedKey {
+		private final String eTag;
+		private final String text;
+
+		private CachedKey(String eTag, String text) {
+			this.eTag = eTag;
+			this.text = text;
+		}
+	}
+
+	@PostConstruct
+	public void start() {
+		if (SNAPSHOT_KEY.isEmpty()) {
+			logger.info("Auth snapshot publishing is disabled");
+			return;
+		}
+		executor.scheduleWithFixedDelay(this::publishQuietly, DEBOUNCE_SECONDS, REPUBLISH_SECONDS, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Schedules a publish shortly, unless one is already pending.
+	 */
+	public void requestPublish() {
+		if (SNAPSHOT_KEY.isEmpty()) {
+			return;
+		}
+		if (publishPending.compareAndSet(false, true)) {
+			executor.schedule(() -> {
+				publishPending.set(false);
+				publishQuietly();
+			}, DEBOUNCE_SECONDS, TimeUnit.SECONDS);
+		}
+	}
+
+	private void publishQuietly() {
+		try {
+			publish();
+		} catch (SQLException | IOException | RuntimeException e) {
+			/* The Lambda keeps using the previous snapshot, then RDS once it goes stale */
+			logger.error("Unable to publish auth snapshot: " + e.getMessage());
+		}
+	}
+
+	private void publish() throws SQLException, IOException {
+		Toolkit.init();
+		if (Toolkit.AUTH_SNAPSHOT_BUCKET == null) {
+			/* Without the bucket the Lambda authenticates from RDS */
+			logger.warn("No auth snapshot bucket is configured; not publishing");
+			return;
+		}
+		long generatedAt = System.currentTimeMillis();
+		Map<String, SnapshotUser> users = loadUsers();
+		S3Client s3 = Toolkit.getS3Client();
+		addPublicKeys(s3, users);
+		byte[] snapshot = AuthSnapshotWriter.write(new ArrayList<>(users.values()), generatedAt);
+		PutObjectRequest request = PutObjectRequest.builder()
+				.bucket(Toolkit.AUTH_SNAPSHOT_BUCKET)
+				.key(SNAPSHOT_KEY)
+				.contentType("application/octet-stream")
+				.build();
+		s3.putObject(request, RequestBody.fromBytes(snapshot));
+		logger.info("Published auth snapshot with " + users.size() + " users (" + snapshot.length + " bytes)");
+	}
+
+	/**
+	 * @return enabled users with their mappings, by username
+	 */
+	private Map<String, SnapshotUser> loadUsers() throws SQLException {
+		Map<String, SnapshotUser> users = new LinkedHashMap<>();
+		try (
+				Connection con = dataSource.getConnection();
+				PreparedStatement ps = con.prepareStatement(SQL);
+				ResultSet rs = ps.executeQuery();) {
+			while (rs.next()) {
+				String username = rs.getString("username");
+				SnapshotUser user = users.get(username);
+				if (user == null) {
+					Timestamp expiration = rs.getTimestamp("passwordExpiration");
+					user = new SnapshotUser(rs.getLong("id"), username, rs.getString("password"),
+							expiration == null ? null : expiration.toLocalDateTime());
+					users.put(username, user);
+				}
+				long directoryMappingId = rs.getLong("directoryMappingId");
+				if (!rs.wasNull()) {
+					user.getMappings().add(new SnapshotMapping(directoryMappingId, rs.getString("entry"),
+							rs.getString("target"), rs.getBoolean("write")));
+				}
+			}
+		}
+		return users;
+	}
+
+	/**
+	 * Adds every object under {@code <username>/public-keys/} in the resource bucket, in key order,
+	 * downloading only keys that are new or changed since the last publish.
+	 */
+	private void addPublicKeys(S3Client s3, Map<String, SnapshotUser> users) {
+		Map<String, CachedKey> current = new HashMap<>();
+		ListObjectsV2Request request = ListObjectsV2Request.builder()
+				.bucket(Toolkit.RESOURCE_BUCKET)
+				.build();
+		for (S3Object obj : s3.listObjectsV2Paginator(request).contents()) {
+			String key = obj.key();
+			int slash = key.indexOf('/');
+			if (slash < 0 || key.endsWith("/") || !key.startsWith("/public-keys/", slash)) {
+				continue;
+			}
+			SnapshotUser user = users.get(key.substring(0, slash));
+			if (user == null) {
+				continue;
+			}
+			CachedKey cached = publicKeyCache.get(key);
+			if (cached == null || !cached.eTag.equals(obj.eTag())) {
+				GetObjectRequest get = GetObjectRequest.builder()
+						.bucket(Toolkit.RESOURCE_BUCKET)
+						.key(key)
+						.build();
+				String text = s3.getObjectAsBytes(get).asString(StandardCharsets.UTF_8)
+						.replace("\r", "").replace("\n", "");
+				cached = new CachedKey(obj.eTag(), text);
+			}
+			current.put(key, cached);
+			user.getPublicKeys().add(cached.text);
+		}
+		publicKeyCache = current;
+	}
+}
@@ -0,0 +1,111 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.example.application.dao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Encodes the auth snapshot read by the transfer auth Lambda (AuthSnapshot in transfer-auth-fn-code).
+ * Both sides must agree on the layout; bump {@link #FORMAT_VERSION} on any change.
+ *
+ * Format version 1, big-endian, strings in modified UTF-8:
+ * <pre>
+ * int magic "FTAS", short version, long generatedAtMillis, int userCount,
+ * per user: long id, UTF username, UTF passwordHash ("" when unset),
+ *           long passwordExpiration (epoch seconds of the LocalDateTime at UTC, Long.MIN_VALUE when unset),
+ *           int mappingCount, per mapping: long id, UTF entry, UTF target, boolean write,
+ *           int keyCount, per key: UTF publicKey
+ * int CRC32 of all preceding bytes
+ * </pre>
+ */
+public class AuthSnapshotWriter {
+
+	public static final int MAGIC = 0x46544153;
+	public static final short FORMAT_VERSION = 1;
+	private static final long NO_EXPIRATION = Long.MIN_VALUE;
+
+	/**
+	 * One enabled user as the Lambda needs them.
+	 */
+	public static class SnapshotUser {
+		private final long id;
+		private final String username;
+		private final String passwordHash;
+		private final LocalDateTime passwordExpiration;
+		private final List<SnapshotMapping> mappings = new ArrayList<>();
+		private final List<String> publicKeys = new ArrayList<>();
+
+		public SnapshotUser(long id, String username, String passwordHash, LocalDateTime passwordExpiration) {
+			this.id = id;
+			this.username = username;
+			this.passwordHash = passwordHash;
+			this.passwordExpiration = passwordExpiration;
+		}
+
+		public String getUsername() {
+			return username;
+		}
+
+		public List<SnapshotMapping> getMappings() {
+			return mappings;
+		}
+
+		public List<String> getPublicKeys() {
+			return publicKeys;
+		}
+	}
+
+	public static class SnapshotMapping {
+		private final long id;
+		private final String entry;
+		private final String target;
+		private final boolean write;
+
+		public SnapshotMapping(long id, String entry, String target, boolean write) {
+			this.id = id;
+			this.entry = entry;
+			this.target = target;
+			this.write = write;
+		}
+	}
+
+	public static byte[] write(List<SnapshotUser> users, long generatedAtMillis) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + users.size() * 256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeShort(FORMAT_VERSION);
+		out.writeLong(generatedAtMillis);
+		out.writeInt(users.size());
+		for (SnapshotUser user : users) {
+			out.writeLong(user.id);
+			out.writeUTF(user.username);
+			out.writeUTF(user.passwordHash == null ? "" : user.passwordHash);
+			out.writeLong(user.passwordExpiration == null ? NO_EXPIRATION
+					: user.passwordExpiration.toEpochSecond(ZoneOffset.UTC));
+			out.writeInt(user.mappings.size());
+			for (SnapshotMapping mapping : user.mappings) {
+				out.writeLong(mapping.id);
+				out.writeUTF(mapping.entry);
+				out.writeUTF(mapping.target);
+				out.writeBoolean(mapping.write);
+			}
+			out.writeInt(user.publicKeys.size());
+			for (String publicKey : user.publicKeys) {
+				out.writeUTF(publicKey);
+			}
+		}
+		out.flush();
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeInt((int) crc.getValue());
+		out.flush();
+		return bytes.toByteArray();
+	}
+}
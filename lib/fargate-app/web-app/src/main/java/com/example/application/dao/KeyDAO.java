@@ -28,6 +28,8 @@ public class KeyDAO {
 
 	@Autowired
 	private DataSourceImpl dataSource;
+	@Autowired
+	private AuthSnapshotPublisher authSnapshotPublisher;
 
 
 	public KeyDAO() {
@@ -53,6 +55,7 @@ public class KeyDAO {
 		} catch (SQLException e) {
 			logger.error(e.getMessage());
 		}
+		authSnapshotPublisher.requestPublish();
 
 	}
 
@@ -69,6 +72,7 @@ public class KeyDAO {
 			logger.error(e.getMessage());
 
 		}
+		authSnapshotPublisher.requestPublish();
 	}
 	public static Map<Long,Key> getKeysStatic(AppUser appUser) {
 		Map<Long,Key> keys = new HashMap<>();
@@ -29,6 +29,8 @@ public class OrganizationDAO {
 
 	@Autowired
 	private DataSourceImpl dataSource;
+	@Autowired
+	private PortalCache portalCache;
 //	private Map<Long, Organization> organizations = null;
 	/*
 	public Map<Long, Organization> getOrganizations() {
@@ -76,6 +78,7 @@ public class OrganizationDAO {
 		} catch (SQLException e) {
 			logger.error(e.getMessage());
 		}
+		portalCache.invalidate();
 	//	this.organizations.put(org.getId(), org);
 	}
 
@@ -91,28 +94,16 @@ public class OrganizationDAO {
 		} catch (SQLException f) {
 			logger.error(f.getMessage());
 		}
+		portalCache.invalidate();
 	}
 
+	/**
+	 * @return all organizations, indexed by id, copied from the {@link PortalCache} so the caller can
+	 *         change them
+	 */
 	public Map<Long, Organization> getOrganizations() {
-		logger.info("Loading organizations from the DB");
 		Map<Long, Organization> organizations = new HashMap<>();
-		String sql = "SELECT id, description, active FROM organization";
-		try (
-
-				// Connection con = Toolkit.getRcdmsConnection();
-				Connection con = dataSource.getConnection();
-				PreparedStatement ps = con.prepareStatement(sql);
-				ResultSet rs = ps.executeQuery();
-
-		) {
-			while (rs.next()) {
-				Organization org = new Organization(rs.getLong("id"), rs.getString("description"),
-						rs.getBoolean("active"));
-				organizations.put(org.getId(), org);
-			}
-		} catch (Exception e) {
-			logger.error(e.getMessage());
-		}
+		portalCache.getSnapshot().getOrganizations().forEach((id, org) -> organizations.put(id, new Organization(org)));
 		return organizations;
 	}
 
@@ -137,22 +128,8 @@ public class OrganizationDAO {
 	}
 		
 	public Organization getOrganization(long id) {
-		String sql = "SELECT id, description, active FROM organization WHERE id = ?";
-		Organization org = null;
-		try (
-				Connection con = dataSource.getConnection();
-				PreparedStatement ps = con.prepareStatement(sql);
-			) {
-				ps.setLong(1, id);
-				try(ResultSet rs = ps.executeQuery()) {
-					while (rs.next()) {
-						org = new Organization(id, rs.getString("description"), rs.getBoolean("active"));
-					}
-				}} catch(SQLException e) {
-				logger.error(e.getMessage());
-			}
-		
-		return org;
+		Organization org = portalCache.getSnapshot().getOrganizations().get(id);
+		return org == null ? null : new Organization(org);
 	}
 		
 		/*
@@ -0,0 +1,138 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.example.application.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.application.EnvironmentSettings;
+import com.example.application.data.AppUser;
+import com.example.application.data.Organization;
+import com.example.application.security.DataSourceImpl;
+
+/**
+ * Application-wide read-through cache of users, their directory mappings and organizations.
+ * All sessions share it, so the portal holds one copy of these tables rather than one per admin
+ * session.
+ *
+ * Each load produces a read-only, versioned {@link Snapshot}. The DAOs call {@link #invalidate()}
+ * after every write, and the next read loads a new snapshot. Snapshots also expire after
+ * PORTAL_CACHE_TTL_SECONDS (default 300). That picks up changes made outside this process, for
+ * example by another portal task, or by the auth Lambda rehashing a password.
+ */
+@Component
+public class PortalCache {
+	private final static Logger logger = LogManager.getLogger(PortalCache.class);
+
+	private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(
+			EnvironmentSettings.getLong("PORTAL_CACHE_TTL_SECONDS", 300, 1, 24 * 60 * 60));
+
+	@Autowired
+	private DataSourceImpl dataSource;
+	/* Bumped by every write; a snapshot loaded under an older generation is stale */
+	private final AtomicLong generation = new AtomicLong();
+	private volatile Snapshot snapshot;
+	private long loads;
+
+	/**
+	 * One consistent load of the cached tables. The maps can't be modified. The objects in them
+	 * are shared by every session and must not be changed either; the DAOs hand out copies of the
+	 * single users and organizations a session is about to edit.
+	 */
+	public static class Snapshot {
+		private final long version;
+		private final long generation;
+		private final long loadedAt;
+		private final Map<Long, AppUser> users;
+		private final Map<String, AppUser> usersByUsername;
+		private final Map<Long, Organization> organizations;
+
+		private Snapshot(long version, long generation, Map<Long, AppUser> users,
+				Map<Long, Organization> organizations) {
+			this.version = version;
+			this.generation = generation;
+			this.loadedAt = System.nanoTime();
+			this.users = Collections.unmodifiableMap(users);
+			Map<String, AppUser> byUsername = new HashMap<>();
+			users.values().forEach(user -> byUsername.put(user.getUsername(), user));
+			this.usersByUsername = Collections.unmodifiableMap(byUsername);
+			this.organizations = Collections.unmodifiableMap(organizations);
+		}
+
+		/**
+		 * @return a number that changes whenever a new snapshot is loaded
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		public Map<Long, AppUser> getAppUsers() {
+			return users;
+		}
+
+		/**
+		 * @return the user, or null if there was none when the snapshot was loaded
+		 */
+		public AppUser getAppUser(String username) {
+			return usersByUsername.get(username);
+		}
+
+		public Map<Long, Organization> getOrganizations() {
+			return organizations;
+		}
+	}
+
+	/**
+	 * @return the current snapshot, loaded first if it was invalidated or has expired
+	 */
+	public Snapshot getSnapshot() {
+		Snapshot current = snapshot;
+		if (isCurrent(current)) {
+			return current;
+		}
+		synchronized (this) {
+			current = snapshot;
+			if (isCurrent(current)) {
+				return current;
+			}
+			/* Read before loading, so a write made during the load leaves this snapshot stale */
+			long loadGeneration = generation.get();
+			try (Connection con = dataSource.getConnection()) {
+				Map<Long, Organization> organizations = AppUserLoader.loadOrganizations(con);
+				Map<Long, AppUser> users = AppUserLoader.loadAll(con, organizations);
+				current = new Snapshot(++loads, loadGeneration, users, organizations);
+				snapshot = current;
+				logger.info("Cached " + users.size() + " users and " + organizations.size() + " organizations");
+			} catch (SQLException e) {
+				logger.error(e.getMessage());
+				if (current == null) {
+					/* Not stored, so the next read tries again */
+					return new Snapshot(-1, -1, new HashMap<>(), new HashMap<>());
+				}
+			}
+			return current;
+		}
+	}
+
+	private boolean isCurrent(Snapshot current) {
+		return current != null && current.generation == generation.get()
+				&& System.nanoTime() - current.loadedAt < TTL_NANOS;
+	}
+
+	/**
+	 * Marks the cache stale after a write to users, mappings or organizations.
+	 */
+	public void invalidate() {
+		generation.incrementAndGet();
+	}
+}
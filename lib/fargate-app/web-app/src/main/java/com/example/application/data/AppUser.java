@@ -35,6 +35,17 @@ public class AppUser {
 		this.organization = organization;
 	}
 
+	/**
+	 * A copy that can be changed without affecting this user, including its organization and
+	 * directory mappings.
+	 */
+	public AppUser(AppUser other) {
+		this(other.id, other.firstName, other.lastName, other.username, other.email, other.enabled, other.password,
+				other.role, other.passwordExpiration,
+				other.organization == null ? null : new Organization(other.organization));
+		other.directoryMappings.forEach((id, mapping) -> directoryMappings.put(id, new DirectoryMapping(mapping)));
+	}
+
 	public String getFullName() {
 		return firstName + " " + lastName;
 	}
@@ -33,6 +33,10 @@ public class DirectoryMapping {
 		this.write = write;
 	}
 
+	public DirectoryMapping(DirectoryMapping other) {
+		this(other.directoryMappingId, other.userId, other.entry, other.target, other.write);
+	}
+
 	public DirectoryMapping(long userId) {
 		this.entry = "/";
 		this.target = "/";
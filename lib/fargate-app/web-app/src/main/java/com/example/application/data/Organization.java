@@ -16,6 +16,10 @@ public class Organization {
 		this.active = active;
 	}
 
+	public Organization(Organization other) {
+		this(other.id, other.description, other.active);
+	}
+
 	public Organization() {
 		active = true;
 	}
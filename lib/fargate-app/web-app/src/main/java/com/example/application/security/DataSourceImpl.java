@@ -5,118 +5,128 @@ package com.example.application.security;
 
 import java.io.PrintWriter;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
-//import java.util.logging.Logger;
-import org.springframework.stereotype.Component;
-
-import com.example.application.Toolkit;
-
-//import com.vaadin.starter.business.Toolkit;
 
 import javax.sql.DataSource;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.stereotype.Component;
 
+import com.example.application.EnvironmentSettings;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * The portal's DataSource: a HikariCP pool of connections opened by {@link IamAuthDataSource}.
+ * The pool is shared by every instance, so the static DAO helpers that create their own
+ * DataSourceImpl borrow from the same pool as the injected bean. Closing a borrowed connection
+ * returns it to the pool.
+ *
+ * Sized and tuned with environment variables:
+ * DB_POOL_MIN_IDLE (default 2), DB_POOL_MAX_SIZE (10), DB_POOL_CONNECTION_TIMEOUT_MS (10000),
+ * DB_POOL_MAX_LIFETIME_MS (1800000) and DB_POOL_LEAK_DETECTION_MS (60000; 0 disables it).
+ * A connection that has been idle is checked with {@link Connection#isValid(int)} before it is
+ * handed out, and one held longer than the leak detection threshold is logged with the stack
+ * trace of the code that borrowed it.
+ */
 @Component
 public class DataSourceImpl implements DataSource {
 	private final static Logger logger = LogManager.getLogger(DataSourceImpl.class);
 
+	private static final long VALIDATION_TIMEOUT_MS = 3000;
+	private static final long KEEPALIVE_MS = 5 * 60 * 1000L;
+	private static final long IDLE_TIMEOUT_MS = 10 * 60 * 1000L;
+	private static HikariDataSource pool;
+
 	public DataSourceImpl() {
 
 	}
 
+	private static synchronized HikariDataSource pool() {
+		if (pool == null) {
+			HikariConfig config = new HikariConfig();
+			config.setPoolName("portal-db");
+			config.setDataSource(new IamAuthDataSource());
+			config.setMinimumIdle(EnvironmentSettings.getInt("DB_POOL_MIN_IDLE", 2, 0, 100));
+			config.setMaximumPoolSize(EnvironmentSettings.getInt("DB_POOL_MAX_SIZE", 10, 1, 100));
+			config.setConnectionTimeout(EnvironmentSettings.getLong("DB_POOL_CONNECTION_TIMEOUT_MS", 10000, 250, Long.MAX_VALUE));
+			config.setMaxLifetime(EnvironmentSettings.getLong("DB_POOL_MAX_LIFETIME_MS", 30 * 60 * 1000L, 0, Long.MAX_VALUE));
+			config.setLeakDetectionThreshold(EnvironmentSettings.getLong("DB_POOL_LEAK_DETECTION_MS", 60000, 0, Long.MAX_VALUE));
+			config.setValidationTimeout(VALIDATION_TIMEOUT_MS);
+			config.setKeepaliveTime(KEEPALIVE_MS);
+			config.setIdleTimeout(IDLE_TIMEOUT_MS);
+			config.setAutoCommit(true);
+			/* Start even if the database can't be reached yet; borrowing retries until the connection timeout */
+			config.setInitializationFailTimeout(-1);
+			pool = new HikariDataSource(config);
+			logger.info("Opened database connection pool");
+		}
+		return pool;
+	}
+
+	@PreDestroy
+	public void close() {
+		synchronized (DataSourceImpl.class) {
+			if (pool != null) {
+				pool.close();
+				pool = null;
+			}
+		}
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return pool().getConnection();
+	}
+
+	/**
+	 * The database user is fixed and authenticates with IAM, so credentials can't be supplied.
+	 */
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Connections always use IAM authentication");
+	}
+
 	@Override
 	public PrintWriter getLogWriter() throws SQLException {
-		// TODO Auto-generated method stub
-		return null;
+		return pool().getLogWriter();
 	}
 
 	@Override
 	public void setLogWriter(PrintWriter out) throws SQLException {
-		// TODO Auto-generated method stub
-
+		pool().setLogWriter(out);
 	}
 
 	@Override
 	public void setLoginTimeout(int seconds) throws SQLException {
-		// TODO Auto-generated method stub
-
+		pool().setLoginTimeout(seconds);
 	}
 
 	@Override
 	public int getLoginTimeout() throws SQLException {
-		// TODO Auto-generated method stub
-		return 0;
+		return pool().getLoginTimeout();
 	}
 
 	@Override
 	public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
-		// TODO Auto-generated method stub
-		return null;
+		return pool().getParentLogger();
 	}
 
 	@Override
 	public <T> T unwrap(Class<T> iface) throws SQLException {
-		// TODO Auto-generated method stub
-		return null;
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		return pool().unwrap(iface);
 	}
 
 	@Override
 	public boolean isWrapperFor(Class<?> iface) throws SQLException {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	/*
-	public Connection getConnection() throws SQLException {
-		Connection con = null;
-		String jdbc = null;
-		try {
-			Class.forName(Toolkit.mysqldriver);
-		} catch (Exception e) {
-			logger.info(e.getMessage());
-		}
-		try {
-			jdbc = "jdbc:mysql://" + Toolkit.RDS_ENDPOINT
-					+ ":3306/transfer?verifyServerCertificate=false&useSSL=false&requireSSL=false";
-			con = DriverManager.getConnection(jdbc, Toolkit.RDS_USERNAME, Toolkit.RDS_PASSWORD);
-			con.setAutoCommit(true);
-		} catch (SQLException e) {
-			logger.error("Failed to connect to " + jdbc);
-			logger.info(e.getMessage());
-		}
-		return con;
-	}*/
-
-	
-	@Override
-	public Connection getConnection() throws SQLException {
-		Toolkit.init();
-    	try {
-			Class.forName("com.mysql.cj.jdbc.Driver");
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-    	
-        String JDBC_URL = "jdbc:mysql://" + Toolkit.RDS_ENDPOINT + ":3306/FileTransferAdminPortal";
-        Connection con = null;
-        try {
-        	con = DriverManager.getConnection(JDBC_URL, Toolkit.setMySqlConnectionProperties());
-        	con.setAutoCommit(true);
-        } catch(SQLException e) {
-        	e.printStackTrace();
-        	logger.info("Can't get SQL connection for  " + JDBC_URL);
-        }
-        return con;
-    }
-	
-	
-	@Override
-	public Connection getConnection(String username, String password) throws SQLException {
-		return null;
+		return iface.isInstance(this) || pool().isWrapperFor(iface);
 	}
 
 }
@@ -0,0 +1,92 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.example.application.security;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import com.example.application.Toolkit;
+
+/**
+ * Opens physical connections to the portal database for the pool in {@link DataSourceImpl}.
+ * Every connection logs in with the current IAM auth token from {@link Toolkit}, so connections
+ * opened after the token is refreshed use the new one; RDS only checks the token at login, so
+ * open connections are unaffected.
+ * Connector/J's prepared statement caches are enabled here because the DAOs prepare their
+ * statements on every call.
+ */
+public class IamAuthDataSource implements DataSource {
+
+	private int loginTimeout;
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		Toolkit.init();
+		Properties properties = Toolkit.setMySqlConnectionProperties();
+		properties.setProperty("cachePrepStmts", "true");
+		properties.setProperty("prepStmtCacheSize", "250");
+		properties.setProperty("prepStmtCacheSqlLimit", "2048");
+		properties.setProperty("useServerPrepStmts", "true");
+		/* Skip round-trips for session state the driver already knows */
+		properties.setProperty("useLocalSessionState", "true");
+		properties.setProperty("cacheServerConfiguration", "true");
+		properties.setProperty("elideSetAutoCommits", "true");
+		if (loginTimeout > 0) {
+			properties.setProperty("connectTimeout", String.valueOf(loginTimeout * 1000));
+		}
+		return DriverManager.getConnection("jdbc:mysql://" + Toolkit.RDS_ENDPOINT + ":3306/FileTransferAdminPortal",
+				properties);
+	}
+
+	/**
+	 * The database user is fixed and authenticates with IAM, so credentials can't be supplied.
+	 */
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Connections always use IAM authentication");
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return null;
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		loginTimeout = seconds;
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return loginTimeout;
+	}
+
+	@Override
+	public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		throw new SQLException(getClass().getName() + " is not a wrapper for " + iface.getName());
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this);
+	}
+}
@@ -0,0 +1,172 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.example.application.transfer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.example.application.EnvironmentSettings;
+import com.example.application.S3ClientManager;
+import com.example.application.Toolkit;
+
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+/**
+ * A multipart upload whose parts the browser PUTs straight to S3 through presigned URLs, so the
+ * file's bytes never pass through the portal. The portal creates the upload, signs part URLs in
+ * small batches as the browser needs them, records the ETag S3 returned for each part, and then
+ * completes or aborts the upload. The key and upload id stay on the server; the browser only ever
+ * holds URLs for this upload's parts.
+ *
+ * Parts are S3_UPLOAD_PART_SIZE_MB (default 16), or larger if the file would otherwise need more than
+ * S3's 10,000 parts. URLs expire after S3_PRESIGNED_URL_MINUTES (default 15).
+ */
+public class PresignedMultipartUpload {
+	private final static Logger logger = LogManager.getLogger(PresignedMultipartUpload.class);
+
+	/* S3's multipart limits */
+	private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+	private static final long MAX_PART_SIZE = 5L * 1024 * 1024 * 1024;
+	private static final int MAX_PARTS = 10000;
+	public static final long MAX_OBJECT_SIZE = 5L * 1024 * 1024 * 1024 * 1024;
+	/* Most URLs a browser can ask for at once */
+	private static final int MAX_SIGN_BATCH = 100;
+
+	private static final long PART_SIZE = EnvironmentSettings.getLong("S3_UPLOAD_PART_SIZE_MB", 16,
+			MIN_PART_SIZE / (1024 * 1024), MAX_PART_SIZE / (1024 * 1024)) * 1024L * 1024L;
+	/* S3 accepts presigned URLs for up to 7 days */
+	private static final Duration URL_EXPIRY = Duration.ofMinutes(
+			EnvironmentSettings.getLong("S3_PRESIGNED_URL_MINUTES", 15, 1, 7 * 24 * 60));
+
+	private final String key;
+	private final String uploadId;
+	private final long size;
+	private final long partSize;
+	private final int partCount;
+	private final Map<Integer, String> eTags = new TreeMap<>();
+
+	private PresignedMultipartUpload(String key, String uploadId, long size, long partSize, int partCount) {
+		this.key = key;
+		this.uploadId = uploadId;
+		this.size = size;
+		this.partSize = partSize;
+		this.partCount = partCount;
+	}
+
+	/**
+	 * Starts a multipart upload of a file of the given size to the key.
+	 */
+	public static PresignedMultipartUpload create(String key, long size) {
+		if (size < 0 || size > MAX_OBJECT_SIZE) {
+			throw new IllegalArgumentException("Files must be smaller than 5 TB");
+		}
+		long partSize = Math.max(PART_SIZE, (size + MAX_PARTS - 1) / MAX_PARTS);
+		partSize = Math.min(partSize, MAX_PART_SIZE);
+		/* An empty file is one empty part */
+		int partCount = (int) Math.max(1, (size + partSize - 1) / partSize);
+		String uploadId = Toolkit.getS3Client()
+				.createMultipartUpload(r -> r.bucket(Toolkit.S3_BUCKET).key(key))
+				.uploadId();
+		logger.info("Started presigned upload of " + key + ", " + partCount + " parts of " + partSize + " bytes");
+		return new PresignedMultipartUpload(key, uploadId, size, partSize, partCount);
+	}
+
+	/**
+	 * @return URLs for parts first to first + count - 1, numbered from 1
+	 */
+	public List<String> presignParts(int first, int count) {
+		if (first < 1 || count < 1 || count > MAX_SIGN_BATCH || first + count - 1 > partCount) {
+			throw new IllegalArgumentException("No parts " + first + " to " + (first + count - 1) + " in " + key);
+		}
+		S3Presigner presigner = S3ClientManager.getPresigner();
+		List<String> urls = new ArrayList<>(count);
+		for (int partNumber = first; partNumber < first + count; partNumber++) {
+			int part = partNumber;
+			urls.add(presigner.presignUploadPart(r -> r
+					.signatureDuration(URL_EXPIRY)
+					.uploadPartRequest(p -> p
+							.bucket(Toolkit.S3_BUCKET)
+							.key(key)
+							.uploadId(uploadId)
+							.partNumber(part)
+							.contentLength(partLength(part))))
+					.url().toString());
+		}
+		return urls;
+	}
+
+	/**
+	 * Records the ETag S3 returned when the browser uploaded a part.
+	 */
+	public synchronized void partUploaded(int partNumber, String eTag) {
+		if (partNumber < 1 || partNumber > partCount || eTag == null || eTag.isBlank()) {
+			throw new IllegalArgumentException("Invalid part " + partNumber + " of " + key);
+		}
+		eTags.put(partNumber, eTag);
+	}
+
+	/**
+	 * @return how many bytes the uploaded parts hold
+	 */
+	public synchronized long getBytesUploaded() {
+		return eTags.keySet().stream().mapToLong(this::partLength).sum();
+	}
+
+	/**
+	 * Assembles the object from the uploaded parts.
+	 */
+	public synchronized void complete() {
+		if (eTags.size() != partCount) {
+			throw new IllegalStateException(eTags.size() + " of " + partCount + " parts of " + key + " uploaded");
+		}
+		List<CompletedPart> parts = new ArrayList<>(partCount);
+		eTags.forEach((partNumber, eTag) -> parts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build()));
+		Toolkit.getS3Client().completeMultipartUpload(r -> r
+				.bucket(Toolkit.S3_BUCKET)
+				.key(key)
+				.uploadId(uploadId)
+				.multipartUpload(m -> m.parts(parts)));
+		logger.info("Completed presigned upload of " + key);
+	}
+
+	/**
+	 * Discards the uploaded parts. Parts left by an abort that failed are removed by the bucket's
+	 * lifecycle rule.
+	 */
+	public void abort() {
+		try {
+			Toolkit.getS3Client().abortMultipartUpload(r -> r.bucket(Toolkit.S3_BUCKET).key(key).uploadId(uploadId));
+			logger.info("Aborted presigned upload of " + key);
+		} catch (SdkException e) {
+			logger.error(e.getMessage());
+		}
+	}
+
+	private long partLength(int partNumber) {
+		return Math.min(partSize, size - (partNumber - 1) * partSize);
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public long getPartSize() {
+		return partSize;
+	}
+
+	public int getPartCount() {
+		return partCount;
+	}
+}
@@ -0,0 +1,174 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.example.application.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.example.application.EnvironmentSettings;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+/**
+ * Reads an S3 object as byte ranges fetched in parallel, so a large download isn't limited to the
+ * throughput of a single connection.
+ *
+ * Parts are read in order. At most {@code concurrency} parts are fetched ahead of the one being
+ * read, so a download holds no more than (concurrency + 1) * partSize bytes. Every range is
+ * requested with the object's ETag, so an object overwritten during the download fails it rather
+ * than mixing two versions.
+ *
+ * All downloads share S3_DOWNLOAD_THREADS threads (default 32). That caps the S3 client
+ * connections they use together, leaving some for the rest of the portal.
+ */
+public class RangedGetInputStream extends InputStream {
+	private final static Logger logger = LogManager.getLogger(RangedGetInputStream.class);
+
+	private static final int PART_ATTEMPTS = 3;
+	private static final ExecutorService rangeExecutor = Executors.newFixedThreadPool(
+			EnvironmentSettings.getInt("S3_DOWNLOAD_THREADS", 32, 1, 256),
+			r -> {
+				Thread t = new Thread(r, "s3-ranged-get");
+				t.setDaemon(true);
+				return t;
+			});
+
+	private final S3Client s3;
+	private final String bucket;
+	private final String key;
+	private final String eTag;
+	private final long length;
+	private final int partSize;
+	private final int concurrency;
+	private final Deque<Future<byte[]>> parts = new ArrayDeque<>();
+	private long nextPartStart;
+	private byte[] part = new byte[0];
+	private int position;
+	private boolean closed;
+
+	public RangedGetInputStream(S3Client s3, String bucket, String key, String eTag, long length, int partSize,
+			int concurrency) {
+		this.s3 = s3;
+		this.bucket = bucket;
+		this.key = key;
+		this.eTag = eTag;
+		this.length = length;
+		this.partSize = partSize;
+		this.concurrency = concurrency;
+		requestParts();
+	}
+
+	private void requestParts() {
+		while (parts.size() < concurrency && nextPartStart < length) {
+			long start = nextPartStart;
+			long end = Math.min(start + partSize, length) - 1;
+			parts.add(rangeExecutor.submit(() -> fetch(start, end)));
+			nextPartStart = end + 1;
+		}
+	}
+
+	private byte[] fetch(long start, long end) throws IOException {
+		GetObjectRequest request = GetObjectRequest.builder()
+				.bucket(bucket)
+				.key(key)
+				.range("bytes=" + start + "-" + end)
+				.ifMatch(eTag)
+				.build();
+		byte[] bytes = new byte[(int) (end - start + 1)];
+		for (int attempt = 1;; attempt++) {
+			/* The client retries failed requests; this retries a connection dropped while reading the body */
+			try (ResponseInputStream<GetObjectResponse> in = s3.getObject(request)) {
+				int read = in.readNBytes(bytes, 0, bytes.length);
+				if (read != bytes.length) {
+					throw new IOException("Expected " + bytes.length + " bytes of " + key + " at " + start + ", got " + read);
+				}
+				return bytes;
+			} catch (IOException e) {
+				if (attempt == PART_ATTEMPTS || Thread.currentThread().isInterrupted()) {
+					throw e;
+				}
+				logger.warn("Retrying bytes " + start + "-" + end + " of " + key + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @return false at the end of the object
+	 */
+	private boolean nextPart() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		Future<byte[]> next = parts.poll();
+		if (next == null) {
+			return false;
+		}
+		try {
+			part = next.get();
+			position = 0;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted downloading " + key);
+		} catch (ExecutionException | CancellationException e) {
+			Throwable cause = e.getCause() == null ? e : e.getCause();
+			throw new IOException("Failed downloading " + key + ": " + cause.getMessage(), cause);
+		}
+		requestParts();
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (position == part.length && !nextPart()) {
+			return -1;
+		}
+		return part[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (position == part.length && !nextPart()) {
+			return -1;
+		}
+		int count = Math.min(len, part.length - position);
+		System.arraycopy(part, position, b, off, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public int available() {
+		return part.length - position;
+	}
+
+	/**
+	 * Cancels the parts still being fetched, e.g. when the browser abandons the download.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		for (Future<byte[]> pending : parts) {
+			pending.cancel(true);
+		}
+		parts.clear();
+		part = new byte[0];
+		position = 0;
+	}
+}
@@ -0,0 +1,237 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.example.application.transfer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.example.application.EnvironmentSettings;
+
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Writes to an S3 object as a multipart upload, sending each part while the next one is still being
+ * written, so nothing is spooled to disk and the S3 transfer overlaps the browser's.
+ *
+ * Parts are S3_STREAM_UPLOAD_PART_SIZE_MB (default 8, 5 to 1024) and are held in a pool of
+ * S3_STREAM_UPLOAD_BUFFERS reusable buffers (default 4, 2 to 64), which are also the most parts uploaded at
+ * once. When every buffer is waiting on S3, writes block, which slows the browser down rather than
+ * using more memory. A file smaller than one part is sent with a single PutObject.
+ *
+ * The object is only created by {@link #complete()}; {@link #close()} doesn't complete it, because
+ * Vaadin also closes the stream when an upload fails. Call {@link #abort()} to discard the parts.
+ */
+public class S3MultipartOutputStream extends OutputStream {
+	private final static Logger logger = LogManager.getLogger(S3MultipartOutputStream.class);
+
+	/* Parts are int-sized arrays, so they stay well under 2 GB */
+	private static final int PART_SIZE = (int) (EnvironmentSettings.getLong("S3_STREAM_UPLOAD_PART_SIZE_MB", 8, 5, 1024)
+			* 1024L * 1024L);
+	private static final int BUFFERS = EnvironmentSettings.getInt("S3_STREAM_UPLOAD_BUFFERS", 4, 2, 64);
+	private static final ExecutorService partExecutor = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "s3-stream-upload");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final S3Client s3;
+	private final String bucket;
+	private final String key;
+	private final BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(BUFFERS);
+	private final List<Future<CompletedPart>> parts = new ArrayList<>();
+	private int allocatedBuffers;
+	private byte[] buffer;
+	private int filled;
+	private long bytesWritten;
+	private String uploadId;
+	private volatile Exception failure;
+
+	public S3MultipartOutputStream(S3Client s3, String bucket, String key) {
+		this.s3 = s3;
+		this.bucket = bucket;
+		this.key = key;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			checkFailure();
+			if (buffer == null) {
+				buffer = takeBuffer();
+			}
+			int count = Math.min(len, PART_SIZE - filled);
+			System.arraycopy(b, off, buffer, filled, count);
+			filled += count;
+			off += count;
+			len -= count;
+			bytesWritten += count;
+			if (filled == PART_SIZE) {
+				sendPart();
+			}
+		}
+	}
+
+	private byte[] takeBuffer() throws IOException {
+		byte[] free = freeBuffers.poll();
+		if (free != null) {
+			return free;
+		}
+		if (allocatedBuffers < BUFFERS) {
+			allocatedBuffers++;
+			return new byte[PART_SIZE];
+		}
+		try {
+			return freeBuffers.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted uploading " + key);
+		}
+	}
+
+	private void sendPart() throws IOException {
+		try {
+			if (uploadId == null) {
+				uploadId = s3.createMultipartUpload(r -> r.bucket(bucket).key(key)).uploadId();
+			}
+		} catch (SdkException e) {
+			throw new IOException("Could not start upload of " + key + ": " + e.getMessage(), e);
+		}
+		/* abort() clears the field while parts may still be running */
+		String partUploadId = uploadId;
+		int partNumber = parts.size() + 1;
+		byte[] data = buffer;
+		int length = filled;
+		buffer = null;
+		filled = 0;
+		parts.add(partExecutor.submit(() -> {
+			try {
+				String eTag = s3.uploadPart(UploadPartRequest.builder()
+						.bucket(bucket)
+						.key(key)
+						.uploadId(partUploadId)
+						.partNumber(partNumber)
+						.contentLength((long) length)
+						.build(),
+						RequestBody.fromInputStream(new ByteArrayInputStream(data, 0, length), length))
+						.eTag();
+				return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+			} catch (RuntimeException e) {
+				failure = e;
+				throw e;
+			} finally {
+				/* Dropped if abort() has since started a new pool that is already full */
+				freeBuffers.offer(data);
+			}
+		}));
+	}
+
+	private void checkFailure() throws IOException {
+		Exception e = failure;
+		if (e != null) {
+			throw new IOException("Upload of " + key + " failed: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Sends what is left, waits for every part and creates the object. The upload is aborted if
+	 * anything fails.
+	 */
+	public void complete() throws IOException {
+		try {
+			if (uploadId == null) {
+				int length = filled;
+				byte[] data = buffer == null ? new byte[0] : buffer;
+				s3.putObject(r -> r.bucket(bucket).key(key).contentLength((long) length),
+						RequestBody.fromInputStream(new ByteArrayInputStream(data, 0, length), length));
+				return;
+			}
+			if (filled > 0) {
+				sendPart();
+			}
+			List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+			for (Future<CompletedPart> part : parts) {
+				completedParts.add(part.get());
+			}
+			s3.completeMultipartUpload(r -> r
+					.bucket(bucket)
+					.key(key)
+					.uploadId(uploadId)
+					.multipartUpload(m -> m.parts(completedParts)));
+			logger.info("Streamed " + bytesWritten + " bytes to " + key + " in " + completedParts.size() + " parts");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			abort();
+			throw new InterruptedIOException("Interrupted uploading " + key);
+		} catch (ExecutionException | SdkException | IOException e) {
+			abort();
+			Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+			throw new IOException("Upload of " + key + " failed: " + cause.getMessage(), cause);
+		} finally {
+			buffer = null;
+			filled = 0;
+		}
+	}
+
+	/**
+	 * Stops sending parts and discards those already sent. Parts left by an abort that failed are
+	 * removed by the bucket's lifecycle rule.
+	 * A part cancelled before it started never returns its buffer, so the pool is started over.
+	 */
+	public void abort() {
+		for (Future<CompletedPart> part : parts) {
+			part.cancel(true);
+		}
+		freeBuffers.clear();
+		allocatedBuffers = 0;
+		String abortedUploadId = uploadId;
+		if (abortedUploadId != null) {
+			try {
+				s3.abortMultipartUpload(r -> r.bucket(bucket).key(key).uploadId(abortedUploadId));
+				logger.info("Aborted streamed upload of " + key);
+			} catch (SdkException e) {
+				logger.error(e.getMessage());
+			}
+			uploadId = null;
+		}
+		parts.clear();
+		buffer = null;
+		filled = 0;
+	}
+
+	/**
+	 * Leaves the upload open; see {@link #complete()} and {@link #abort()}.
+	 */
+	@Override
+	public void close() {
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+}
@@ -4,6 +4,7 @@ package com.example.application.transfer;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import com.example.application.UploadBuffer;
 import com.example.application.data.TreeItem;
@@ -15,7 +16,10 @@ public interface TransferEngine {
 
 	public String upload(TreeItem selectedFolder, UploadBuffer buffer);
 
-	public byte[] zipFiles(TreeItem[] items, long[] sizes) throws IOException;
+	/**
+	 * Writes a zip of the items to the stream as they are read, without holding the archive in memory.
+	 */
+	public void zipFiles(TreeItem[] items, long[] sizes, OutputStream out) throws IOException;
 
 	public void rename(TreeItem s3Object, String newFileName);
 
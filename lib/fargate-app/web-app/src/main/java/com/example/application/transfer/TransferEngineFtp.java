@@ -2,11 +2,11 @@
 // SPDX-License-Identifier: MIT-0
 package com.example.application.transfer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import com.example.application.FtpClient;
@@ -86,39 +86,30 @@ public class TransferEngineFtp implements TransferEngine {
 		}
 	}
 
+	/**
+	 * Streams the files into a zip on the output stream one at a time, as they all share the SFTP channel.
+	 */
 	@Override
-	public byte[] zipFiles(TreeItem[] items, long[] sizes) throws IOException {
-		try (final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				final ZipOutputStream zos = new ZipOutputStream(baos)) {
-			for (int i = 0; i < items.length; i++) {
-				TreeItem s3Object = items[i];
-
+	public void zipFiles(TreeItem[] items, long[] sizes, OutputStream out) throws IOException {
+		List<ZipStreamWriter.Entry> entries = new ArrayList<>();
+		for (TreeItem item : items) {
+			entries.add(new ZipStreamWriter.Entry(item.getS3ObjectKey(), () -> {
 				try {
-					logger.info("getting channel and file");
-					InputStream is = ftpClient.getSftpChannel().get(s3Object.getFtpPath());
-					logger.info("Input stream received");
-					String filename = s3Object.getS3ObjectKey();
-					ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-					int nRead;
-					byte[] data = new byte[4];
-					while ((nRead = is.read(data, 0, data.length)) != -1) {
-						buffer.write(data, 0, nRead);
-					}
-					buffer.flush();
-					byte[] content = buffer.toByteArray();
-					ZipEntry entry = new ZipEntry(filename);
-					entry.setSize(content.length);
-					zos.putNextEntry(entry);
-					zos.write(content);
-					zos.closeEntry();
+					return ftpClient.getSftpChannel().get(item.getFtpPath());
 				} catch (SftpException e) {
-					logger.error(e.getMessage());
+					throw new IOException(e.getMessage(), e);
 				}
+			}));
+		}
+		new ZipStreamWriter(0, new ZipStreamWriter.Listener() {
+			@Override
+			public void entryStarted(int index) {
+				logger.info("Zipping " + items[index].getFtpPath());
+			}
 
+			@Override
+			public void entryFinished(int index, long bytes) {
 			}
-			zos.finish();
-			zos.flush();
-			return baos.toByteArray();
-		}
+		}).write(entries, out);
 	}
 }
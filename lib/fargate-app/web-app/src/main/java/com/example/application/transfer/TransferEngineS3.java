@@ -1,16 +1,18 @@
 // Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
 // SPDX-License-Identifier: MIT-0
 package com.example.application.transfer;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import com.example.application.EnvironmentSettings;
+import com.example.application.S3ClientManager;
 import com.example.application.Toolkit;
 import com.example.application.UploadBuffer;
 import com.example.application.dao.CloudWatchService;
@@ -24,31 +26,50 @@ import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.async.AsyncRequestBody;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
 import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.transfer.s3.CompletedUpload;
 import software.amazon.awssdk.transfer.s3.S3TransferManager;
 import software.amazon.awssdk.transfer.s3.UploadRequest;
 
 public class TransferEngineS3 implements TransferEngine {
 	private final static Logger logger = LogManager.getLogger(TransferEngineS3.class);
+	private static final int ZIP_READ_AHEAD = EnvironmentSettings.getInt("ZIP_READ_AHEAD", 2, 0, 16);
+	/* Objects at least this large are downloaded as parallel byte ranges */
+	private static final long RANGED_DOWNLOAD_THRESHOLD = EnvironmentSettings.getLong("S3_RANGED_DOWNLOAD_THRESHOLD_MB", 64,
+			1, 1024 * 1024) * 1024L * 1024L;
+	private static final int DOWNLOAD_PART_SIZE = (int) (EnvironmentSettings.getLong("S3_DOWNLOAD_PART_SIZE_MB", 8, 1, 512)
+			* 1024L * 1024L);
+	private static final int DOWNLOAD_CONCURRENCY = EnvironmentSettings.getInt("S3_DOWNLOAD_CONCURRENCY", 8, 1, 64);
 	private CloudWatchService cloudWatchService;
-	private static final String region = System.getenv("AWS_REGION");
-	private static Region REGION = Region.of(region);
 
 	public TransferEngineS3(CloudWatchService cloudWatchService) {
 		this.cloudWatchService = cloudWatchService;
 	}
 
+	/**
+	 * Large objects are read as S3_DOWNLOAD_CONCURRENCY (default 8) parallel ranges of
+	 * S3_DOWNLOAD_PART_SIZE_MB (default 8); others with a single GET.
+	 */
 	@Override
 	public InputStream getInputStream(TreeItem treeItem, long size) {
 		cloudWatchDownloadStart(treeItem.getS3ObjectKey());
 		S3Client s3Client = Toolkit.getS3Client();
+		if (size >= RANGED_DOWNLOAD_THRESHOLD && DOWNLOAD_CONCURRENCY > 1) {
+			HeadObjectResponse head = s3Client.headObject(HeadObjectRequest.builder()
+					.bucket(Toolkit.S3_BUCKET)
+					.key(treeItem.getS3ObjectKey())
+					.build());
+			cloudWatchDownloadFinish(treeItem.getS3ObjectKey(), head.contentLength());
+			return new RangedGetInputStream(s3Client, Toolkit.S3_BUCKET, treeItem.getS3ObjectKey(), head.eTag(),
+					head.contentLength(), DOWNLOAD_PART_SIZE, DOWNLOAD_CONCURRENCY);
+		}
 		GetObjectRequest getObjectRequest = GetObjectRequest.builder()
 				.bucket(Toolkit.S3_BUCKET)
 				.key(treeItem.getS3ObjectKey())
@@ -80,8 +101,7 @@ public class TransferEngineS3 implements TransferEngine {
 		System.out.println(buffer.getFileName());
 		String fileName = buffer.getFileName();
 		String s3ParentFolder = selectedFolder.getS3ObjectKey();
-		boolean needsBackslash = s3ParentFolder.charAt(s3ParentFolder.length() - 1) != '/';
-		String key = s3ParentFolder + (needsBackslash ? "/" : "") + fileName;
+		String key = getKey(selectedFolder, fileName);
 		
 		/*Validation-- does the key exist?*/
 		/*
@@ -107,12 +127,7 @@ public class TransferEngineS3 implements TransferEngine {
 		
 		logger.info("Starting upload of " + fileName + " with key = " + key);
 		this.cloudWatchUploadStart(s3ParentFolder, fileName);
-		S3TransferManager transferManager = S3TransferManager.builder()
-				.s3ClientConfiguration(cfg -> cfg
-						.region(REGION)
-						.targetThroughputInGbps(20.0)
-						.minimumPartSizeInBytes(10 * 1024L * 1024L))
-				.build();
+		S3TransferManager transferManager = S3ClientManager.getTransferManager();
 		UploadRequest uploadRequest = UploadRequest.builder()
 				.requestBody(AsyncRequestBody.fromFile(Paths.get(buffer.getTmpFile().getAbsolutePath())))
 				.putObjectRequest(p -> p.bucket(Toolkit.S3_BUCKET).key(key))
@@ -137,56 +152,31 @@ public class TransferEngineS3 implements TransferEngine {
 
 	
 	
-	@Override
 	/**
-	 * Zipping implementation thanks to this thread:
-	 * https://vaadin.com/forum/thread/17562004/download-multiple-files
-	 * 
-	 * @return
-	 * @throws IOException
+	 * Streams the objects into a zip on the output stream, fetching the next ZIP_READ_AHEAD objects
+	 * (default 2) from S3 while the current one is compressed.
 	 */
-	public byte[] zipFiles(TreeItem[] items, long[] sizes) throws IOException {
+	@Override
+	public void zipFiles(TreeItem[] items, long[] sizes, OutputStream out) throws IOException {
 		S3Client s3 = Toolkit.getS3Client();
-		try (final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				final ZipOutputStream zos = new ZipOutputStream(baos)) {
-
-			for (int i = 0; i < items.length; i++) {
-				TreeItem s3Object = items[i];
-				long size = sizes[i];
-				String cloudwatchStartEvent = cloudWatchService.getLogstream() + " OPEN ";
-				cloudwatchStartEvent += "Path=/" + Toolkit.S3_BUCKET + "/" + s3Object.getS3ObjectKey();
-				cloudwatchStartEvent += " Mode=Read Interface=Web";
-				cloudWatchService.publishLogEvent(cloudwatchStartEvent);
-
-				String filename = s3Object.getS3ObjectKey();
-				GetObjectRequest getObjectRequest = GetObjectRequest.builder()
-						.bucket(Toolkit.S3_BUCKET)
-						.key(s3Object.getS3ObjectKey())
-						.build();
-				ResponseInputStream<GetObjectResponse> response = s3.getObject(getObjectRequest);
-				ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-				int nRead;
-				byte[] data = new byte[4];
-				while ((nRead = response.read(data, 0, data.length)) != -1) {
-					buffer.write(data, 0, nRead);
-				}
-				buffer.flush();
-				byte[] content = buffer.toByteArray();
-				ZipEntry entry = new ZipEntry(filename);
-				entry.setSize(content.length);
-				zos.putNextEntry(entry);
-				zos.write(content);
-				zos.closeEntry();
-				String cloudwatchCloseEvent = cloudWatchService.getLogstream() + " CLOSE ";
-				cloudwatchCloseEvent += "Path=/" + Toolkit.S3_BUCKET + "/" + s3Object.getS3ObjectKey();
-				cloudwatchCloseEvent += " BytesOut=" + size + " Interface=Web";
-				cloudWatchService.publishLogEvent(cloudwatchCloseEvent);
+		List<ZipStreamWriter.Entry> entries = new ArrayList<>();
+		for (TreeItem item : items) {
+			entries.add(new ZipStreamWriter.Entry(item.getS3ObjectKey(), () -> s3.getObject(GetObjectRequest.builder()
+					.bucket(Toolkit.S3_BUCKET)
+					.key(item.getS3ObjectKey())
+					.build())));
+		}
+		new ZipStreamWriter(ZIP_READ_AHEAD, new ZipStreamWriter.Listener() {
+			@Override
+			public void entryStarted(int index) {
+				cloudWatchDownloadStart(items[index].getS3ObjectKey());
+			}
 
+			@Override
+			public void entryFinished(int index, long bytes) {
+				cloudWatchDownloadFinish(items[index].getS3ObjectKey(), bytes);
 			}
-			zos.finish();
-			zos.flush();
-			return baos.toByteArray();
-		}
+		}).write(entries, out);
 	}
 
 	@Override
@@ -215,6 +205,44 @@ public class TransferEngineS3 implements TransferEngine {
 		cloudWatchService.publishLogEvent(event);
 	}
 
+	/**
+	 * @return the key a file uploaded to the folder is stored under
+	 */
+	public static String getKey(TreeItem folder, String fileName) {
+		String s3ParentFolder = folder.getS3ObjectKey();
+		boolean needsBackslash = s3ParentFolder.charAt(s3ParentFolder.length() - 1) != '/';
+		return s3ParentFolder + (needsBackslash ? "/" : "") + fileName;
+	}
+
+	/**
+	 * Starts an upload that the browser sends straight to S3, see {@link PresignedMultipartUpload}.
+	 */
+	public PresignedMultipartUpload startPresignedUpload(TreeItem folder, String fileName, long size) {
+		PresignedMultipartUpload upload = PresignedMultipartUpload.create(getKey(folder, fileName), size);
+		cloudWatchUploadStart(folder.getS3ObjectKey(), fileName);
+		return upload;
+	}
+
+	public void completePresignedUpload(TreeItem folder, String fileName, PresignedMultipartUpload upload) {
+		upload.complete();
+		cloudWatchUploadFinish(folder.getS3ObjectKey(), fileName, upload.getSize());
+	}
+
+	/**
+	 * Opens a stream that uploads a file to the folder as it is written, see {@link S3MultipartOutputStream}.
+	 */
+	public S3MultipartOutputStream openUploadStream(TreeItem folder, String fileName) {
+		logger.info("Streaming upload of " + fileName + " to " + getKey(folder, fileName));
+		cloudWatchUploadStart(folder.getS3ObjectKey(), fileName);
+		return new S3MultipartOutputStream(Toolkit.getS3Client(), Toolkit.S3_BUCKET, getKey(folder, fileName));
+	}
+
+	public void completeUploadStream(TreeItem folder, String fileName, S3MultipartOutputStream stream)
+			throws IOException {
+		stream.complete();
+		cloudWatchUploadFinish(folder.getS3ObjectKey(), fileName, stream.getBytesWritten());
+	}
+
 	private void cloudWatchDownloadStart(String path) {
 		String cloudwatchStartEvent = cloudWatchService.getLogstream() + " OPEN ";
 		cloudwatchStartEvent += "Path=/" + Toolkit.S3_BUCKET + "/" + path;
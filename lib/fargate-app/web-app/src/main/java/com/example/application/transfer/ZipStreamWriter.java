@@ -0,0 +1,260 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.example.application.transfer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes a zip of several files straight to an output stream such as the HTTP response, so memory
+ * use stays the same however many files are selected and however large they are.
+ *
+ * With read-ahead, the next few entries are opened and read in the background while the current
+ * one is compressed. Each holds at most {@link #CHUNKS_PER_ENTRY} chunks of {@link #CHUNK_SIZE}
+ * bytes, so a download never buffers more than (readAhead + 1) * 1 MB. Without read-ahead, entries
+ * are read one at a time on the calling thread, for sources that can't be read concurrently.
+ *
+ * An entry that can't be opened is logged and left out. A failure partway through an entry aborts
+ * the archive. ZipOutputStream adds Zip64 records itself for entries and archives over 4 GB.
+ */
+public class ZipStreamWriter {
+	private final static Logger logger = LogManager.getLogger(ZipStreamWriter.class);
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+	private static final int CHUNK_SIZE = 256 * 1024;
+	private static final int CHUNKS_PER_ENTRY = 4;
+	private static final ExecutorService readAheadExecutor = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "zip-read-ahead");
+		t.setDaemon(true);
+		return t;
+	});
+	/* Markers on a read-ahead queue, around the chunks of data */
+	private static final Object OPENED = new Object();
+	private static final Object END = new Object();
+
+	private final int readAhead;
+	private final Listener listener;
+
+	public interface Source {
+		InputStream open() throws IOException;
+	}
+
+	public static class Entry {
+		private final String name;
+		private final Source source;
+
+		public Entry(String name, Source source) {
+			this.name = name;
+			this.source = source;
+		}
+	}
+
+	/**
+	 * Told, on the writing thread, when each entry is started and finished, e.g. for audit events.
+	 */
+	public interface Listener {
+		void entryStarted(int index);
+
+		void entryFinished(int index, long bytes);
+	}
+
+	/**
+	 * @param readAhead how many entries after the current one to read in the background; 0 reads them
+	 *                  one at a time on the calling thread
+	 */
+	public ZipStreamWriter(int readAhead, Listener listener) {
+		this.readAhead = readAhead;
+		this.listener = listener;
+	}
+
+	/**
+	 * Writes the archive and flushes the stream, leaving it open.
+	 */
+	public void write(List<Entry> entries, OutputStream out) throws IOException {
+		ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+		/* Most transfers are already compressed; favour throughput over ratio */
+		zip.setLevel(Deflater.BEST_SPEED);
+		ReadAhead[] pending = new ReadAhead[entries.size()];
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try {
+			for (int i = 0; i < entries.size(); i++) {
+				for (int next = i; readAhead > 0 && next <= i + readAhead && next < entries.size(); next++) {
+					if (pending[next] == null) {
+						pending[next] = new ReadAhead(entries.get(next));
+					}
+				}
+				Entry entry = entries.get(i);
+				long bytes;
+				if (readAhead > 0) {
+					bytes = pending[i].copyTo(zip, entry, i, listener);
+					pending[i] = null;
+				} else {
+					bytes = copy(entry, zip, i, buffer);
+				}
+				if (bytes >= 0) {
+					listener.entryFinished(i, bytes);
+				}
+			}
+			zip.finish();
+			zip.flush();
+		} finally {
+			for (ReadAhead readAhead : pending) {
+				if (readAhead != null) {
+					readAhead.cancel();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the bytes copied, or -1 if the entry couldn't be opened and was left out
+	 */
+	private long copy(Entry entry, ZipOutputStream zip, int index, byte[] buffer) throws IOException {
+		InputStream in;
+		try {
+			in = entry.source.open();
+		} catch (IOException | RuntimeException e) {
+			logger.error("Leaving " + entry.name + " out of the zip: " + e.getMessage());
+			return -1;
+		}
+		try (InputStream source = in) {
+			listener.entryStarted(index);
+			zip.putNextEntry(new ZipEntry(entry.name));
+			long bytes = 0;
+			int read;
+			while ((read = source.read(buffer)) != -1) {
+				zip.write(buffer, 0, read);
+				bytes += read;
+			}
+			zip.closeEntry();
+			return bytes;
+		}
+	}
+
+	/**
+	 * Opens one entry and reads it into a bounded queue in the background.
+	 */
+	private static class ReadAhead implements Runnable {
+		private final Entry entry;
+		private final BlockingQueue<Object> chunks = new ArrayBlockingQueue<>(CHUNKS_PER_ENTRY);
+		private final Future<?> future;
+		private volatile InputStream in;
+		private volatile boolean cancelled;
+
+		private ReadAhead(Entry entry) {
+			this.entry = entry;
+			this.future = readAheadExecutor.submit(this);
+		}
+
+		@Override
+		public void run() {
+			try {
+				try {
+					in = entry.source.open();
+				} catch (IOException | RuntimeException e) {
+					chunks.put(new OpenFailure(e));
+					return;
+				}
+				chunks.put(OPENED);
+				try (InputStream source = in) {
+					byte[] chunk;
+					while (!cancelled && (chunk = readChunk(source)) != null) {
+						chunks.put(chunk);
+					}
+					chunks.put(END);
+				} catch (IOException | RuntimeException e) {
+					if (!cancelled) {
+						chunks.put(e instanceof IOException ? e : new IOException(e));
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private static byte[] readChunk(InputStream source) throws IOException {
+			byte[] chunk = new byte[CHUNK_SIZE];
+			int filled = 0;
+			int read;
+			while (filled < CHUNK_SIZE && (read = source.read(chunk, filled, CHUNK_SIZE - filled)) != -1) {
+				filled += read;
+			}
+			if (filled == 0) {
+				return null;
+			}
+			return filled == CHUNK_SIZE ? chunk : Arrays.copyOf(chunk, filled);
+		}
+
+		/**
+		 * @return the bytes copied, or -1 if the entry couldn't be opened and was left out
+		 */
+		private long copyTo(ZipOutputStream zip, Entry entry, int index, Listener listener) throws IOException {
+			Object opened = take();
+			if (opened instanceof OpenFailure) {
+				logger.error("Leaving " + entry.name + " out of the zip: " + ((OpenFailure) opened).cause.getMessage());
+				return -1;
+			}
+			listener.entryStarted(index);
+			zip.putNextEntry(new ZipEntry(entry.name));
+			long bytes = 0;
+			Object item;
+			while ((item = take()) != END) {
+				if (item instanceof IOException) {
+					throw new IOException("Failed reading " + entry.name, (IOException) item);
+				}
+				byte[] chunk = (byte[]) item;
+				zip.write(chunk);
+				bytes += chunk.length;
+			}
+			zip.closeEntry();
+			return bytes;
+		}
+
+		private Object take() throws IOException {
+			try {
+				return chunks.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted reading " + entry.name);
+			}
+		}
+
+		private void cancel() {
+			cancelled = true;
+			future.cancel(true);
+			InputStream source = in;
+			if (source != null) {
+				try {
+					/* Unblocks a read waiting on the network */
+					source.close();
+				} catch (IOException e) {
+					logger.debug(e.getMessage());
+				}
+			}
+		}
+	}
+
+	private static class OpenFailure {
+		private final Exception cause;
+
+		private OpenFailure(Exception cause) {
+			this.cause = cause;
+		}
+	}
+}
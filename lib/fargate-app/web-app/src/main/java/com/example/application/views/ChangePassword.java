@@ -2,9 +2,12 @@
 // SPDX-License-Identifier: MIT-0
 package com.example.application.views;
 
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.regex.Pattern;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -34,6 +37,7 @@ import jakarta.annotation.PostConstruct;
 @Route(value = "Password", layout = MainLayout.class)
 @jakarta.annotation.security.PermitAll
 public class ChangePassword extends VerticalLayout {
+	private final static Logger logger = LogManager.getLogger(ChangePassword.class);
 	private AppUser user;
 	private VerticalLayout form = new VerticalLayout();
 	private FormLayout CheckboxContainer = new FormLayout();
@@ -105,9 +109,15 @@ public class ChangePassword extends VerticalLayout {
 			cbMatch.setValue(pf1.getValue().equals(pf2.getValue()));
 		});
 		btnSave.addClickListener(e -> {
-			this.user.setPassword(Toolkit.hashPassword(pf1.getValue()));
-			this.user.setPasswordExpiration(LocalDateTime.now().plusYears(1));
-			this.appUserDAO.update(user);
+			try {
+				this.appUserDAO.updatePassword(user, Toolkit.hashPassword(pf1.getValue()),
+						LocalDateTime.now().plusYears(1));
+			} catch (SQLException f) {
+				logger.error(f.getMessage());
+				Notification n = Notification.show("Password could not be updated", 3500, Position.MIDDLE);
+				n.addThemeVariants(NotificationVariant.LUMO_ERROR);
+				return;
+			}
 			Notification n = Notification.show("Password successfully updated", 2000, Position.MIDDLE);
 			n.addThemeVariants(NotificationVariant.LUMO_SUCCESS);
 		});
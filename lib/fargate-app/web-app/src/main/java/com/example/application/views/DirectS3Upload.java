@@ -0,0 +1,201 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.example.application.views;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.example.application.EnvironmentSettings;
+import com.example.application.Toolkit;
+import com.example.application.data.TreeItem;
+import com.example.application.transfer.PresignedMultipartUpload;
+import com.example.application.transfer.TransferEngineS3;
+import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.ClientCallable;
+import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.button.Button;
+import com.vaadin.flow.component.button.ButtonVariant;
+import com.vaadin.flow.component.dependency.JsModule;
+import com.vaadin.flow.component.dialog.Dialog;
+import com.vaadin.flow.component.html.Div;
+import com.vaadin.flow.component.html.Label;
+import com.vaadin.flow.component.icon.VaadinIcon;
+import com.vaadin.flow.component.notification.Notification;
+import com.vaadin.flow.component.notification.Notification.Position;
+import com.vaadin.flow.component.notification.NotificationVariant;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
+import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.progressbar.ProgressBar;
+
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import software.amazon.awssdk.core.exception.SdkException;
+
+/**
+ * Upload button that sends the file from the browser straight to S3 as a presigned multipart upload
+ * (see {@link PresignedMultipartUpload}), so it isn't buffered on the task's disk and isn't limited
+ * by the task's bandwidth. The browser uploads S3_BROWSER_UPLOAD_CONCURRENCY parts at a time
+ * (default 4).
+ */
+@JsModule("./direct-s3-upload.js")
+public class DirectS3Upload extends Div {
+	private final static Logger logger = LogManager.getLogger(DirectS3Upload.class);
+	private static final int CONCURRENCY = EnvironmentSettings.getInt("S3_BROWSER_UPLOAD_CONCURRENCY", 4, 1, 16);
+
+	private final Supplier<TreeItem> folder;
+	private final TransferEngineS3 transferEngine;
+	private final Consumer<String> uploaded;
+	private final Button btnUpload = new Button("Upload File...", VaadinIcon.UPLOAD.create());
+	private final ProgressBar progressBar = new ProgressBar();
+	private TreeItem uploadFolder;
+	private String fileName;
+	private PresignedMultipartUpload upload;
+
+	/**
+	 * @param folder   supplies the folder a chosen file goes to
+	 * @param uploaded told the key of each completed upload
+	 */
+	public DirectS3Upload(Supplier<TreeItem> folder, TransferEngineS3 transferEngine, Consumer<String> uploaded) {
+		this.folder = folder;
+		this.transferEngine = transferEngine;
+		this.uploaded = uploaded;
+		progressBar.setVisible(false);
+		progressBar.setWidth("200px");
+		add(btnUpload, progressBar);
+	}
+
+	@Override
+	protected void onAttach(AttachEvent attachEvent) {
+		super.onAttach(attachEvent);
+		/* The file chooser only opens from the click itself, so the button is wired up in the browser */
+		getElement().executeJs("window.initDirectS3Upload(this, $0)", btnUpload.getElement());
+	}
+
+	@Override
+	protected void onDetach(DetachEvent detachEvent) {
+		if (upload != null) {
+			upload.abort();
+			reset();
+		}
+		super.onDetach(detachEvent);
+	}
+
+	@ClientCallable
+	public void fileSelected(String name, double size) {
+		TreeItem target = folder.get();
+		/* Browsers send a bare name, but don't let one reach another folder */
+		String baseName = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+		if (upload != null) {
+			showError("Wait for the current upload to finish");
+		} else if (target == null || !target.getDirectoryMapping().isWrite()) {
+			showError("Choose a folder you can write to");
+		} else if (baseName.isBlank() || baseName.equals(".") || baseName.equals("..")) {
+			showError("Invalid file name " + name);
+		} else if (size > PresignedMultipartUpload.MAX_OBJECT_SIZE) {
+			showError("File exceeds maximum file size of 5 TB");
+		} else if (Toolkit.objectExists(TransferEngineS3.getKey(target, baseName))) {
+			Dialog dlg = new Dialog();
+			Button btnConfirm = new Button("Overwrite");
+			Button btnCancel = new Button("Cancel");
+			VerticalLayout layout = new VerticalLayout();
+			HorizontalLayout buttonContainer = new HorizontalLayout();
+			dlg.add(layout);
+			buttonContainer.add(btnConfirm, btnCancel);
+			btnConfirm.addThemeVariants(ButtonVariant.LUMO_PRIMARY);
+			btnCancel.addClickListener(e -> dlg.close());
+			btnConfirm.addClickListener(e -> {
+				start(target, baseName, (long) size);
+				dlg.close();
+			});
+			Label lbl = new Label("A file with this name already exists.  Do you want to overwrite it?");
+			layout.add(lbl, buttonContainer);
+			dlg.open();
+		} else {
+			start(target, baseName, (long) size);
+		}
+	}
+
+	private void start(TreeItem target, String name, long size) {
+		try {
+			upload = transferEngine.startPresignedUpload(target, name, size);
+		} catch (SdkException | IllegalArgumentException e) {
+			logger.error(e.getMessage());
+			showError("Upload of " + name + " failed: " + e.getMessage());
+			return;
+		}
+		uploadFolder = target;
+		fileName = name;
+		btnUpload.setEnabled(false);
+		progressBar.setValue(0);
+		progressBar.setVisible(true);
+		getElement().executeJs("window.uploadDirectS3Parts(this, $0, $1, $2)", (double) upload.getPartSize(),
+				upload.getPartCount(), CONCURRENCY);
+	}
+
+	@ClientCallable
+	public JsonArray signParts(int first, int count) {
+		JsonArray urls = Json.createArray();
+		if (upload != null) {
+			List<String> presigned = upload.presignParts(first, count);
+			for (int i = 0; i < presigned.size(); i++) {
+				urls.set(i, presigned.get(i));
+			}
+		}
+		return urls;
+	}
+
+	@ClientCallable
+	public void partUploaded(int partNumber, String eTag) {
+		if (upload != null) {
+			upload.partUploaded(partNumber, eTag);
+			progressBar.setValue(upload.getSize() == 0 ? 1 : (double) upload.getBytesUploaded() / upload.getSize());
+		}
+	}
+
+	@ClientCallable
+	public void uploadFinished() {
+		if (upload == null) {
+			return;
+		}
+		try {
+			transferEngine.completePresignedUpload(uploadFolder, fileName, upload);
+			String key = upload.getKey();
+			reset();
+			uploaded.accept(key);
+		} catch (SdkException | IllegalStateException e) {
+			uploadFailed(e.getMessage());
+		}
+	}
+
+	@ClientCallable
+	public void uploadFailed(String message) {
+		if (upload == null) {
+			return;
+		}
+		logger.error("Upload of " + upload.getKey() + " failed: " + message);
+		upload.abort();
+		showError("Upload of " + fileName + " failed: " + message);
+		reset();
+	}
+
+	public boolean isUploading() {
+		return upload != null;
+	}
+
+	private void reset() {
+		upload = null;
+		uploadFolder = null;
+		fileName = null;
+		btnUpload.setEnabled(true);
+		progressBar.setVisible(false);
+	}
+
+	private void showError(String message) {
+		Notification n = Notification.show(message, 3500, Position.MIDDLE);
+		n.addThemeVariants(NotificationVariant.LUMO_ERROR);
+	}
+}
@@ -224,7 +224,7 @@ public class EmailView extends VerticalLayout {
 	}
 
 	private Set<String> getRecipients() {
-		Map<Long, AppUser> users = appUserDAO.getAppUsers(true);
+		Map<Long, AppUser> users = appUserDAO.getAppUsers();
 		Set<String> recipients = null;
 		if (radioGroup.getValue().equals(ALL_ACTIVE)) {
 			recipients = users.values().stream().filter(x -> x.isEnabled())
@@ -3,7 +3,6 @@
 package com.example.application.views;
 
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
@@ -18,6 +17,7 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.vaadin.firitin.components.DynamicFileDownloader;
 import org.vaadin.olli.FileDownloadWrapper;
 import com.example.application.FtpClient;
+import com.example.application.StreamingUploadReceiver;
 import com.example.application.Toolkit;
 import com.example.application.UploadBuffer;
 import com.example.application.dao.AppUserDAO;
@@ -70,9 +70,15 @@ public class FileTransferView extends VerticalLayout {
 	 * be less than the property spring.servlet.multipart.max-file-size as specified in the spring properties file.
 	 */
 	private static final int MAX_FILE_SIZE = 1024 * 1024 * 1024;
+	/**
+	 * In S3 mode, browsers upload straight to S3 unless S3_DIRECT_UPLOAD is false.
+	 */
+	private static final boolean DIRECT_UPLOAD = Toolkit.CLIENT_MODE.equals("S3")
+			&& !"false".equalsIgnoreCase(System.getenv("S3_DIRECT_UPLOAD"));
 	private Grid<TreeItem> s3ObjectGrid = new Grid<>();
 	private FileDownloadWrapper multiDownloadButtonWrapper;
 	private Upload upload;
+	private DirectS3Upload directUpload;
 	private Button btnMultiDownload = new Button("Download Zip File");
 	private ExplorerTreeGrid<TreeItem> treeGrid;
 	private AppUser user;
@@ -89,23 +95,32 @@ public class FileTransferView extends VerticalLayout {
 		String username = null;
 		username = ((UserDetails) principal).getUsername();
 		user = appUserDAO.getAppUser(username);
-		initDownloadButtonWrappers();
-		initUpload();
-		initTreeGrid();
-		initFileGrid();
-		initLayout();
 		if (Toolkit.CLIENT_MODE.equals("FTP")) {
 			transferEngine = new TransferEngineFtp(ftpClient);
 		}
 		if (Toolkit.CLIENT_MODE.equals("S3")) {
 			transferEngine = new TransferEngineS3(cloudWatchService);
 		}
+		initDownloadButtonWrappers();
+		initUpload();
+		initTreeGrid();
+		initFileGrid();
+		initLayout();
 		
 	}
 
 	private void initUpload() {
+		if (DIRECT_UPLOAD) {
+			directUpload = new DirectS3Upload(() -> selectedFolder, (TransferEngineS3) transferEngine,
+					this::showUploadedObject);
+			directUpload.setVisible(false);
+		}
 		UploadBuffer buffer = new UploadBuffer();
-		upload = new Upload(buffer);
+		/* In S3 mode new files are streamed to S3 as they arrive, rather than spooled to disk first */
+		StreamingUploadReceiver receiver = Toolkit.CLIENT_MODE.equals("S3")
+				? new StreamingUploadReceiver(() -> selectedFolder, (TransferEngineS3) transferEngine, buffer)
+				: null;
+		upload = new Upload(receiver != null ? receiver : buffer);
 		upload.setMaxFileSize(MAX_FILE_SIZE);
 		upload.setDropAllowed(false);
 		upload.setVisible(false);
@@ -127,8 +142,22 @@ public class FileTransferView extends VerticalLayout {
 		});
 		upload.addFailedListener(event-> {
 			logger.info("Upload failed: " + event.getReason().getMessage());
+			if (receiver != null) {
+				receiver.abort();
+			}
 		});
 		upload.addSucceededListener(event -> {
+			if (receiver != null && receiver.isStreaming()) {
+				try {
+					showUploadedObject(receiver.complete());
+				} catch (IOException e) {
+					logger.error(e.getMessage());
+					Notification n = Notification.show("Upload of " + event.getFileName() + " failed", 3500,
+							Position.MIDDLE);
+					n.addThemeVariants(NotificationVariant.LUMO_ERROR);
+				}
+				return;
+			}
 			
 			String fileName = buffer.getFileName();
 			String s3ParentFolder = selectedFolder.getS3ObjectKey();
@@ -168,7 +197,13 @@ public class FileTransferView extends VerticalLayout {
 
 	
 	private void upload(SucceededEvent event, UploadBuffer buffer) {
-		String key = this.transferEngine.upload(selectedFolder, buffer);
+		showUploadedObject(this.transferEngine.upload(selectedFolder, buffer));
+	}
+
+	/**
+	 * Adds a newly uploaded object to the folder tree and file grid.
+	 */
+	private void showUploadedObject(String key) {
 		ListObjectsRequest lor = ListObjectsRequest.builder()
 				.bucket(Toolkit.S3_BUCKET)
 				.prefix(key)
@@ -229,7 +264,7 @@ public class FileTransferView extends VerticalLayout {
 		Button btnLarge = new Button("Large File Tips");
 		btnLarge.addClickListener(e -> this.showLargeFileHints());
 		leftLayout.add(treeGrid, permissionsContainer);
-		buttonContainer.add(multiDownloadButtonWrapper, upload, btnLarge);
+		buttonContainer.add(multiDownloadButtonWrapper, DIRECT_UPLOAD ? directUpload : upload, btnLarge);
 		rightLayout.add(s3ObjectGrid, buttonContainer);
 		hl.add(leftLayout, rightLayout);
 		treeGrid.setSizeFull();
@@ -286,30 +321,41 @@ public class FileTransferView extends VerticalLayout {
 		boolean hasWritePermissions = selectedFolder.getDirectoryMapping().isWrite();
 		lblPermissions.setText(getPermissionsDescription());
 		upload.setVisible(hasWritePermissions);
+		if (directUpload != null) {
+			/* Hidden components ignore calls from the browser, which would strand an upload in progress */
+			directUpload.setVisible(hasWritePermissions || directUpload.isUploading());
+		}
 		treeGrid.select(item);
 		updateFileGrid();
 
 	}
 
 	private void initDownloadButtonWrappers() {
+		/* Written straight to the response as the files are read, so large selections don't sit in memory */
 		this.multiDownloadButtonWrapper = new FileDownloadWrapper(
-				new StreamResource("compressed.zip", () -> {
-					ByteArrayInputStream stream = null;
+				new StreamResource("compressed.zip", (out, session) -> {
+					TreeItem[] items;
+					long[] sizes;
+					/* The response is written without the session lock, which the grid needs */
+					session.lock();
 					try {
 						int count = s3ObjectGrid.getSelectedItems().size();
-						TreeItem[] items = new TreeItem[count];
-						long[] sizes = new long[count];
+						items = new TreeItem[count];
+						sizes = new long[count];
 						int i = 0;
 						for (TreeItem item : this.s3ObjectGrid.getSelectedItems()) {
 							items[i] = item;
 							sizes[i] = this.s3ObjectLibrary.get(item.getS3ObjectKey()).size();
 							i++;
 						}
-						stream = new ByteArrayInputStream(this.transferEngine.zipFiles(items, sizes));
+					} finally {
+						session.unlock();
+					}
+					try {
+						this.transferEngine.zipFiles(items, sizes, out);
 					} catch (IOException io) {
 						logger.error(io.getMessage());
 					}
-					return stream;
 				}));
 		multiDownloadButtonWrapper.wrapComponent(btnMultiDownload);
 	}
@@ -325,11 +371,13 @@ public class FileTransferView extends VerticalLayout {
 		DynamicFileDownloader downloadButton = new DynamicFileDownloader(s3Object.getFilename(), s3Object.getFilename(),
 				outputStream -> {
 
-					try {
-						InputStream is = null;
-						long size = this.s3ObjectLibrary.get(s3Object.getS3ObjectKey()).size();
-						is = this.transferEngine.getInputStream(s3Object, size);
-						byte[] buf = new byte[8192];
+					long size = this.s3ObjectLibrary.get(s3Object.getS3ObjectKey()).size();
+					try (InputStream is = this.transferEngine.getInputStream(s3Object, size)) {
+						if (is == null) {
+							return;
+						}
+						/* Large enough to keep up with parallel ranged reads */
+						byte[] buf = new byte[256 * 1024];
 						int length;
 						while ((length = is.read(buf)) > 0) {
 							outputStream.write(buf, 0, length);
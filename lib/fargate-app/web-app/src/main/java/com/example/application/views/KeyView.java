@@ -57,15 +57,17 @@ public class KeyView extends VerticalLayout {
 	private Map<Long, Key> keys;
 	private Button btnIssueKey = new Button("Issue New Key");
 	private AppUser user;
-	private @Autowired KeyDAO keyDAO;
-	private @Autowired AppUserDAO appUserDAO;
-	public KeyView() {
+	private KeyDAO keyDAO;
+	private AppUserDAO appUserDAO;
+	public KeyView(@Autowired KeyDAO keyDAO, @Autowired AppUserDAO appUserDAO) {
 		logger.info("Constructing");
+		this.keyDAO = keyDAO;
+		this.appUserDAO = appUserDAO;
 		Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
 		String username = ((UserDetails) principal).getUsername();
-		user = AppUserDAO.getAppUserStatic(username);
-		keys = KeyDAO.getKeysStatic(user);
-		users = AppUserDAO.loadAppUsersStatic();
+		user = appUserDAO.getAppUser(username);
+		keys = keyDAO.getKeys(user);
+		users = appUserDAO.getAppUsers();
 		ListDataProvider<Key> dp = (ListDataProvider<Key>) DataProvider.ofCollection(this.keys.values());
 		dp.addSortOrder(k -> k.getCreated(), SortDirection.DESCENDING);
 		grid.setDataProvider(dp);
@@ -84,7 +86,7 @@ public class KeyView extends VerticalLayout {
 		String username = ((UserDetails) principal).getUsername();
 		user = appUserDAO.getAppUser(username);
 		keys = keyDAO.getKeys(user);
-		users = appUserDAO.getAppUsers(true);
+		users = appUserDAO.getAppUsers();
 		logger.info("user count=" + users.size());
 		ListDataProvider<Key> dp = (ListDataProvider<Key>) DataProvider.ofCollection(this.keys.values());
 		dp.addSortOrder(k -> k.getCreated(), SortDirection.DESCENDING);
@@ -11,8 +11,8 @@ import com.vaadin.flow.component.icon.VaadinIcon;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.component.textfield.TextField;
-import com.vaadin.flow.data.provider.DataProvider;
-import com.vaadin.flow.data.provider.ListDataProvider;
+import com.vaadin.flow.component.grid.GridSortOrder;
+import com.vaadin.flow.data.provider.Query;
 import com.vaadin.flow.data.provider.SortDirection;
 import com.vaadin.flow.data.value.ValueChangeMode;
 import com.vaadin.flow.router.Route;
@@ -20,8 +20,11 @@ import com.vaadin.flow.router.Route;
 import jakarta.annotation.security.PermitAll;
 
 import com.vaadin.flow.router.PageTitle;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import com.example.application.data.*;
 import com.example.application.ui.components.detailsdrawer.DetailsDrawer;
 import com.example.application.ui.components.detailsdrawer.DetailsDrawerHeader;
@@ -44,10 +47,11 @@ import com.example.application.dao.*;
 @PermitAll
 public class UserAdminView extends SplitViewFrame {
 
+	private static final int SEARCH_DELAY_MS = 300;
+
 	private final static Logger logger = LogManager.getLogger(UserAdminView.class);
 	private Button btnClearAll = new Button("Clear All");
 	private Grid<AppUser> userGrid = new Grid<>();
-	private Map<Long, AppUser> userMap;
 	private Button btnCreateUser = new Button("");
 	private Button btnEditUser = new Button("Edit User");
 	private DetailsDrawer detailsDrawer;
@@ -55,7 +59,6 @@ public class UserAdminView extends SplitViewFrame {
 	private AppUserDAO appUserDAO;
 	private OrganizationDAO organizationDAO;
 	private KeyDAO keyDAO;
-	private ListDataProvider<AppUser> dataProvider;
 	private UserForm userForm;
 	private TextField searchField;
 	private EmailDAO emailDAO;
@@ -71,18 +74,8 @@ public class UserAdminView extends SplitViewFrame {
 			this.keyDAO = keyDAO;
 			this.emailDAO = emailDAO;
 			this.appUserDAO = appUserDAO;
-			userMap = appUserDAO.getAppUsers(true);
-			dataProvider = (ListDataProvider<AppUser>) DataProvider.ofCollection(userMap.values());
 			userForm = new UserForm(emailDAO, this, null);
-			
-			for (AppUser user : userMap.values()) {
-				if (user.getOrganization()==null) {
-					logger.error("Org null for user " + user.getUsername());
-					System.exit(1);
-				}
-			}
-			
-			
+
 			setViewContent(createContent());
 			setViewDetails(createDetailsDrawer());
 			initLayout();
@@ -166,30 +159,29 @@ public class UserAdminView extends SplitViewFrame {
 
 	private void initSearchBar() {
 		searchField = new TextField();
-		searchField.setValueChangeMode(ValueChangeMode.EAGER);
-		searchField.addValueChangeListener(e -> dataProvider.refreshAll());
-		dataProvider.addFilter(user -> {
-			String searchTerm = searchField.getValue().trim();
-			//boolean matchesActiveStatus = user.isEnabled()==!this.cbToggleActive.getValue();
-			boolean matchesActiveStatus = !this.cbToggleActive.getValue() || (cbToggleActive.getValue() && user.isEnabled());
-			if (searchTerm.isEmpty()) {
-				return matchesActiveStatus;
-				//return true;
-			}
-			boolean matchesUsername = matchesTerm(user.getUsername(), searchTerm);
-			boolean matchesFullName = matchesTerm(user.getFullName(), searchTerm);
-			boolean matchesEmail = matchesTerm(user.getEmail(), searchTerm);
-			return (matchesFullName || matchesEmail || matchesUsername) && matchesActiveStatus;
-		});
-		
+		/* Search once typing pauses rather than on every keystroke */
+		searchField.setValueChangeMode(ValueChangeMode.LAZY);
+		searchField.setValueChangeTimeout(SEARCH_DELAY_MS);
+		searchField.addValueChangeListener(e -> userGrid.getDataProvider().refreshAll());
 		cbToggleActive.addValueChangeListener(e-> {
-			dataProvider.refreshAll();
+			userGrid.getDataProvider().refreshAll();
 		});
 		
 	}
 
-	private boolean matchesTerm(String target, String searchTerm) {
-		return target.toLowerCase().contains(searchTerm.toLowerCase());
+	/**
+	 * Fetches only the page the grid is showing, with the search and sort done in the database.
+	 */
+	private Stream<AppUser> fetchUsers(Query<AppUser, Void> query) {
+		List<AppUserLoader.SortOrder> sortOrders = query.getSortOrders().stream()
+				.map(o -> new AppUserLoader.SortOrder(o.getSorted(), o.getDirection() == SortDirection.ASCENDING))
+				.collect(Collectors.toList());
+		return appUserDAO.findAppUsers(searchField.getValue(), cbToggleActive.getValue(), sortOrders, query.getOffset(),
+				query.getLimit()).stream();
+	}
+
+	private int countUsers(Query<AppUser, Void> query) {
+		return appUserDAO.countAppUsers(searchField.getValue(), cbToggleActive.getValue());
 	}
 
 	/**
@@ -198,18 +190,18 @@ public class UserAdminView extends SplitViewFrame {
 	private /* Grid<AppUser> */ VerticalLayout createGrid() {
 		initSearchBar();
 		userGrid = new Grid<AppUser>();
-		userGrid.addColumn(a -> a.getFirstName() + " " + a.getLastName()).setHeader("Name").setSortable(true);
-		userGrid.addColumn(AppUser::getUsername).setHeader("Username").setWidth("200px").setFlexGrow(0)
-				.setSortable(true);
-		userGrid.addColumn(AppUser::getEmail).setHeader("Email").setHeader("Email").setFlexGrow(1).setSortable(true);
+		userGrid.addColumn(a -> a.getFirstName() + " " + a.getLastName()).setHeader("Name").setSortProperty("name");
+		Grid.Column<AppUser> usernameColumn = userGrid.addColumn(AppUser::getUsername).setHeader("Username")
+				.setWidth("200px").setFlexGrow(0).setSortProperty("username");
+		userGrid.addColumn(AppUser::getEmail).setHeader("Email").setHeader("Email").setFlexGrow(1).setSortProperty("email");
 		userGrid.addColumn(a -> a.getRole().getFriendly()).setHeader("Role").setWidth("100px").setFlexGrow(0)
-				.setSortable(true);
-		userGrid.addColumn(a->a.isEnabled() ? "Yes" : "No").setHeader("Active").setSortable(true).setWidth("100px").setFlexGrow(0);
-		userGrid.addColumn(a -> a.getOrganization().getDescription()).setHeader("Organization").setFlexGrow(1).setSortable(true);
+				.setSortProperty("role");
+		userGrid.addColumn(a->a.isEnabled() ? "Yes" : "No").setHeader("Active").setSortProperty("enabled").setWidth("100px").setFlexGrow(0);
+		userGrid.addColumn(a -> a.getOrganization().getDescription()).setHeader("Organization").setFlexGrow(1).setSortProperty("organization");
 		
 		
-		dataProvider.setSortOrder(AppUser::getUsername, SortDirection.ASCENDING);
-		userGrid.setDataProvider(dataProvider);
+		userGrid.setItems(this::fetchUsers, this::countUsers);
+		userGrid.sort(GridSortOrder.asc(usernameColumn).build());
 		userGrid.addSelectionListener(event -> event.getFirstSelectedItem().ifPresent(this::showDetails));
 
 		userGrid.setHeightFull();
@@ -229,10 +221,6 @@ public class UserAdminView extends SplitViewFrame {
 		return this.organizationDAO.getOrganizations();
 	}
 
-	public Map<Long, AppUser> getUserMap() {
-		return userMap;
-	}
-
 	public Grid<AppUser> getUserGrid() {
 		return userGrid;
 	}
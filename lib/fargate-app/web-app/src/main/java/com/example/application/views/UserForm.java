@@ -231,7 +231,6 @@ public class UserForm extends VerticalLayout {
 			userAdminView.getKeyDAO().insertToDb(key);
 		}
 		sendNewUserEmail(user, tempPassword, /*, presignedUrl*/  key);
-		this.userAdminView.getUserMap().put(user.getId(), user);
 		this.userAdminView.getUserGrid().getDataProvider().refreshAll();
 		Notification n = Notification.show(
 				"New user " + user.getUsername() + " successfully created, you may now add directory mappings.", 2000,
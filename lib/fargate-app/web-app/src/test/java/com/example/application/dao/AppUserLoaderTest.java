@@ -0,0 +1,167 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.example.application.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.application.data.AppUser;
+
+/**
+ * Checks that loading users takes the same number of queries however many users, organizations
+ * and directory mappings there are, and that paged loads search and sort in the database.
+ */
+class AppUserLoaderTest {
+
+	private static final int ORGANIZATIONS = 5;
+	private static final int USERS = 200;
+	private static final int MAPPINGS_PER_USER = 3;
+
+	private final AtomicInteger connections = new AtomicInteger();
+	private final AtomicInteger queries = new AtomicInteger();
+	private DataSource dataSource;
+
+	@BeforeEach
+	void createDatabase() throws SQLException {
+		JdbcDataSource h2 = new JdbcDataSource();
+		/* IGNORECASE matches the case-insensitive collation of the portal's MySQL tables */
+		h2.setURL("jdbc:h2:mem:" + System.nanoTime() + ";MODE=MySQL;IGNORECASE=TRUE;DB_CLOSE_DELAY=-1");
+		try (Connection con = h2.getConnection(); Statement st = con.createStatement()) {
+			st.execute("CREATE TABLE organization (id BIGINT PRIMARY KEY, description VARCHAR(200) NOT NULL, "
+					+ "active BOOLEAN NOT NULL)");
+			st.execute("CREATE TABLE AppUser (id BIGINT PRIMARY KEY, firstName VARCHAR(255), lastName VARCHAR(255), "
+					+ "username VARCHAR(255) UNIQUE, email VARCHAR(255), password VARCHAR(255), "
+					+ "passwordExpiration TIMESTAMP, role VARCHAR(100), enabled BOOLEAN NOT NULL, "
+					+ "organizationId BIGINT NOT NULL REFERENCES organization (id))");
+			st.execute("CREATE TABLE directoryMapping (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+					+ "userId BIGINT NOT NULL REFERENCES AppUser (id), entry TEXT, target TEXT, "
+					+ "`read` BOOLEAN NOT NULL DEFAULT TRUE, `write` BOOLEAN NOT NULL DEFAULT TRUE)");
+			for (int org = 1; org <= ORGANIZATIONS; org++) {
+				st.execute("INSERT INTO organization VALUES (" + org + ", 'Organization " + org + "', TRUE)");
+			}
+			for (int user = 1; user <= USERS; user++) {
+				st.execute("INSERT INTO AppUser VALUES (" + user + ", 'First', 'Last', 'user" + user
+						+ "', 'user" + user + "@example.com', 'hash', CURRENT_TIMESTAMP, 'User', " + (user % 4 != 0) + ", "
+						+ (user % ORGANIZATIONS + 1) + ")");
+				for (int mapping = 0; mapping < MAPPINGS_PER_USER; mapping++) {
+					st.execute("INSERT INTO directoryMapping (userId, entry, target, `write`) VALUES (" + user
+							+ ", '/dir" + mapping + "', '/bucket/user" + user + "/dir" + mapping + "', "
+							+ (mapping % 2 == 0) + ")");
+				}
+			}
+		}
+		dataSource = counting(h2);
+	}
+
+	@Test
+	void loadsAllUsersInTwoQueries() throws SQLException {
+		Map<Long, AppUser> users = AppUserLoader.loadAll(dataSource);
+
+		assertEquals(1, connections.get());
+		assertEquals(2, queries.get());
+		assertEquals(USERS, users.size());
+		for (AppUser user : users.values()) {
+			assertEquals(MAPPINGS_PER_USER, user.getDirectoryMappings().size());
+			assertEquals(user.getId() % ORGANIZATIONS + 1, user.getOrganization().getId());
+			assertEquals("Organization " + user.getOrganization().getId(), user.getOrganization().getDescription());
+		}
+		assertSame(users.get(1L).getOrganization(), users.get(1L + ORGANIZATIONS).getOrganization());
+	}
+
+	@Test
+	void loadsOneUserInTwoQueries() throws SQLException {
+		AppUser user = AppUserLoader.load(dataSource, "user42");
+
+		assertEquals(1, connections.get());
+		assertEquals(2, queries.get());
+		assertEquals(42, user.getId());
+		assertEquals(MAPPINGS_PER_USER, user.getDirectoryMappings().size());
+		assertTrue(user.getDirectoryMappings().values().stream().allMatch(m -> m.getUserId() == 42));
+	}
+
+	@Test
+	void loadsOnePageInTwoQueries() throws SQLException {
+		List<AppUser> page = AppUserLoader.loadPage(dataSource, "USER1", false,
+				List.of(new AppUserLoader.SortOrder("username", true)), 20, 10);
+
+		assertEquals(1, connections.get());
+		assertEquals(2, queries.get());
+		/* user1, user10 to user19 and user100 to user199, in string order */
+		assertEquals(List.of("user117", "user118", "user119", "user12", "user120", "user121", "user122", "user123",
+				"user124", "user125"), page.stream().map(AppUser::getUsername).collect(Collectors.toList()));
+		assertTrue(page.stream().allMatch(user -> user.getDirectoryMappings().size() == MAPPINGS_PER_USER));
+		assertEquals(111, AppUserLoader.count(dataSource, "USER1", false));
+	}
+
+	@Test
+	void filtersAndSortsInTheDatabase() throws SQLException {
+		assertEquals(USERS * 3 / 4, AppUserLoader.count(dataSource, " ", true));
+		assertEquals(0, AppUserLoader.count(dataSource, "user_", false));
+		assertEquals(USERS, AppUserLoader.count(dataSource, "First La", false));
+
+		List<AppUser> page = AppUserLoader.loadPage(dataSource, null, true,
+				List.of(new AppUserLoader.SortOrder("organization", false), new AppUserLoader.SortOrder("unknown", true)),
+				0, USERS);
+		assertEquals(USERS * 3 / 4, page.size());
+		assertTrue(page.stream().allMatch(AppUser::isEnabled));
+		assertEquals("Organization " + ORGANIZATIONS, page.get(0).getOrganization().getDescription());
+		assertEquals("Organization 1", page.get(page.size() - 1).getOrganization().getDescription());
+	}
+
+	@Test
+	void returnsNullForUnknownUserAfterOneQuery() throws SQLException {
+		assertNull(AppUserLoader.load(dataSource, "nobody"));
+		assertEquals(1, queries.get());
+	}
+
+	/**
+	 * Wraps the data source so that every connection it opens and every statement prepared on those
+	 * connections is counted.
+	 */
+	private DataSource counting(DataSource target) {
+		return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DataSource.class },
+				(proxy, method, args) -> {
+					Object result = invoke(target, method, args);
+					if (result instanceof Connection) {
+						connections.incrementAndGet();
+						Connection con = (Connection) result;
+						return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+								(conProxy, conMethod, conArgs) -> {
+									String name = conMethod.getName();
+									if (name.equals("prepareStatement") || name.equals("createStatement")
+											|| name.equals("prepareCall")) {
+										queries.incrementAndGet();
+									}
+									return invoke(con, conMethod, conArgs);
+								});
+					}
+					return result;
+				});
+	}
+
+	private static Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.example.application.dao;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.application.dao.AuthSnapshotWriter.SnapshotMapping;
+import com.example.application.dao.AuthSnapshotWriter.SnapshotUser;
+
+/**
+ * Checks the auth snapshot encoding against the layout documented on {@link AuthSnapshotWriter}.
+ * The transfer auth Lambda decodes the same {@link #GOLDEN} bytes in AuthSnapshotTest, so a change
+ * to either side that breaks the other fails one of the two tests.
+ */
+class AuthSnapshotWriterTest {
+
+	private static final long GENERATED_AT = 1700000000000L;
+	/* Written by AuthSnapshotWriter for users(); keep in step with AuthSnapshotTest in transfer-auth-fn-code */
+	private static final String GOLDEN = "4654415300010000018bcfe568000000000200000000000000070005416c696365001d243261243132246162"
+			+ "636465666768696a6b6c6d6e6f707172737475750000000070dd552500000002000000000000000b00012f00"
+			+ "0d2f6275636b65742f616c69636501000000000000000c00072f736861726564000e2f6275636b65742f7368"
+			+ "617265640000000001001c7373682d7273612041414141423320616c696365406578616d706c650000000000"
+			+ "0000080003626f62000080000000000000000000000000000000ee23fbe5";
+
+	private static ArrayList<SnapshotUser> users() {
+		SnapshotUser alice = new SnapshotUser(7, "Alice", "$2a$12$abcdefghijklmnopqrstuu",
+				LocalDateTime.of(2030, 1, 2, 3, 4, 5));
+		alice.getMappings().add(new SnapshotMapping(11, "/", "/bucket/alice", true));
+		alice.getMappings().add(new SnapshotMapping(12, "/shared", "/bucket/shared", false));
+		alice.getPublicKeys().add("ssh-rsa AAAAB3 alice@example");
+		SnapshotUser bob = new SnapshotUser(8, "bob", null, null);
+		return new ArrayList<>(Arrays.asList(alice, bob));
+	}
+
+	@Test
+	void writesTheLayoutTheLambdaReads() throws IOException {
+		assertArrayEquals(HexFormat.of().parseHex(GOLDEN), AuthSnapshotWriter.write(users(), GENERATED_AT));
+	}
+
+	@Test
+	void roundTripsEveryField() throws IOException {
+		byte[] bytes = AuthSnapshotWriter.write(users(), GENERATED_AT);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		assertEquals(AuthSnapshotWriter.MAGIC, in.readInt());
+		assertEquals(AuthSnapshotWriter.FORMAT_VERSION, in.readShort());
+		assertEquals(GENERATED_AT, in.readLong());
+		assertEquals(2, in.readInt());
+
+		assertEquals(7, in.readLong());
+		assertEquals("Alice", in.readUTF());
+		assertEquals("$2a$12$abcdefghijklmnopqrstuu", in.readUTF());
+		assertEquals(LocalDateTime.of(2030, 1, 2, 3, 4, 5),
+				LocalDateTime.ofEpochSecond(in.readLong(), 0, ZoneOffset.UTC));
+		assertEquals(2, in.readInt());
+		assertEquals(11, in.readLong());
+		assertEquals("/", in.readUTF());
+		assertEquals("/bucket/alice", in.readUTF());
+		assertEquals(true, in.readBoolean());
+		assertEquals(12, in.readLong());
+		assertEquals("/shared", in.readUTF());
+		assertEquals("/bucket/shared", in.readUTF());
+		assertEquals(false, in.readBoolean());
+		assertEquals(1, in.readInt());
+		assertEquals("ssh-rsa AAAAB3 alice@example", in.readUTF());
+
+		/* No hash, expiration, mappings or keys */
+		assertEquals(8, in.readLong());
+		assertEquals("bob", in.readUTF());
+		assertEquals("", in.readUTF());
+		assertEquals(Long.MIN_VALUE, in.readLong());
+		assertEquals(0, in.readInt());
+		assertEquals(0, in.readInt());
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length - 4);
+		assertEquals((int) crc.getValue(), in.readInt());
+		assertEquals(0, in.available());
+	}
+
+	@Test
+	void writesAnEmptySnapshot() throws IOException {
+		byte[] bytes = AuthSnapshotWriter.write(new ArrayList<>(), GENERATED_AT);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		assertEquals(AuthSnapshotWriter.MAGIC, in.readInt());
+		assertEquals(AuthSnapshotWriter.FORMAT_VERSION, in.readShort());
+		assertEquals(GENERATED_AT, in.readLong());
+		assertEquals(0, in.readInt());
+		in.readInt();
+		assertEquals(0, in.available());
+	}
+}
@@ -24,6 +24,7 @@ export class FiletransferAdminPortalStack extends Stack {
       vpc: vpc,
       transferS3Bucket: prerequisitesStack.transferS3Bucket,
       transferPublicKeysS3Bucket: prerequisitesStack.transferPublicKeysS3Bucket,
+      authSnapshotS3Bucket: prerequisitesStack.authSnapshotS3Bucket,
      // dbCluster: rdsConstruct.dbCluster,
       dbConnectionSg: prerequisitesStack.dbConnectionSg
     });
@@ -46,6 +47,7 @@ export class FiletransferAdminPortalStack extends Stack {
       dbCluster: rdsConstruct.dbCluster,
       transferS3Bucket: prerequisitesStack.transferS3Bucket,
       transferPublicKeysS3Bucket: prerequisitesStack.transferPublicKeysS3Bucket,
+      authSnapshotS3Bucket: prerequisitesStack.authSnapshotS3Bucket,
     });
     
     new WebappPipelineConstruct(this, 'fap-codePipeline', {
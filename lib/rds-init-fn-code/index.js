@@ -8,6 +8,16 @@ const path = require('path')
 /*const bcrypt = require("bcrypt")*/
 const secrets = new AWS.SecretsManager({apiVersion: '2017-10-17'})
 const secretName = "FileTransferPortalInitialCreds"
+const schemaName = "FileTransferAdminPortal"
+
+/*AppUser indexes added after databases were first created; keep in step with script.sql*/
+const appUserIndexes = [
+  { name: 'idx_appUser_firstName_lastName', columns: '`firstName`, `lastName`' },
+  { name: 'idx_appUser_lastName', columns: '`lastName`' },
+  { name: 'idx_appUser_email', columns: '`email`' },
+  { name: 'idx_appUser_enabled_username', columns: '`enabled`, `username`' },
+]
+
 exports.handler = async (e) => {
   try {
     const { config } = e.params
@@ -49,6 +59,15 @@ exports.handler = async (e) => {
 
     connection.connect()
     
+    /*script.sql drops the schema, so it only runs on a database that hasn't been initialized yet*/
+    if (await isInitialized(connection)) {
+      const added = await migrate(connection)
+      connection.end()
+      return {
+        status: 'OK',
+        migrated: added
+      }
+    }
     const res = await query(connection, cleanSql)
     connection.end()
     
@@ -65,9 +84,33 @@ exports.handler = async (e) => {
   }
 }
 
-function query (connection, sql) {
+async function isInitialized (connection) {
+  const rows = await query(connection,
+    'SELECT COUNT(*) AS tableCount FROM information_schema.tables WHERE table_schema = ? AND table_name = ?',
+    [schemaName, 'AppUser'])
+  return rows[0].tableCount > 0
+}
+
+/*Adds any missing AppUser index; safe to run again*/
+async function migrate (connection) {
+  const rows = await query(connection,
+    'SELECT DISTINCT index_name AS indexName FROM information_schema.statistics WHERE table_schema = ? AND table_name = ?',
+    [schemaName, 'AppUser'])
+  const existing = new Set(rows.map(row => row.indexName))
+  const added = []
+  for (const index of appUserIndexes) {
+    if (!existing.has(index.name)) {
+      await query(connection,
+        `ALTER TABLE \`${schemaName}\`.\`AppUser\` ADD INDEX \`${index.name}\` (${index.columns})`)
+      added.push(index.name)
+    }
+  }
+  return added
+}
+
+function query (connection, sql, values) {
   return new Promise((resolve, reject) => {
-    connection.query(sql, (error, res) => {
+    connection.query(sql, values, (error, res) => {
       if (error) return reject(error)
 
       return resolve(res)
@@ -34,6 +34,11 @@ CREATE TABLE IF NOT EXISTS `AppUser` (
   `organizationId` bigint(20) NOT NULL,
   PRIMARY KEY (`id`),
   UNIQUE KEY (`username`),
+  /* User Admin search (prefix match) and sort. index.js adds these to databases created without them */
+  KEY `idx_appUser_firstName_lastName` (`firstName`, `lastName`),
+  KEY `idx_appUser_lastName` (`lastName`),
+  KEY `idx_appUser_email` (`email`),
+  KEY `idx_appUser_enabled_username` (`enabled`, `username`),
   CONSTRAINT `fk_userToOrganization`
     FOREIGN KEY (`organizationId`) REFERENCES `organization` (`id`)
     ON DELETE CASCADE ON UPDATE CASCADE
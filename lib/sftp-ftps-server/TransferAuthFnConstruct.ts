@@ -10,11 +10,19 @@ import {IFunction,DockerImageFunction, DockerImageCode} from 'aws-cdk-lib/aws-la
 import {Role, ServicePrincipal, Policy, PolicyStatement, Effect} from 'aws-cdk-lib/aws-iam';
 import {RetentionDays} from 'aws-cdk-lib/aws-logs';
 import {StringParameter} from 'aws-cdk-lib/aws-ssm';
+import {Rule, RuleTargetInput, Schedule} from 'aws-cdk-lib/aws-events';
+import {LambdaFunction} from 'aws-cdk-lib/aws-events-targets';
+
+// bcrypt cost of password hashes, shared by the portal (which writes them) and this function (which rehashes
+// any other cost on login). Each step doubles the CPU per password login; see BcryptCalibrationMs for the
+// measured time
+export const BCRYPT_COST = 12;
 
 export interface TransferAuthFnStackProps extends StackProps{
   readonly vpc: IVpc;
   readonly transferS3Bucket: IBucket;
   readonly transferPublicKeysS3Bucket: IBucket;
+  readonly authSnapshotS3Bucket: IBucket;
   //readonly dbCluster: rds.IDatabaseCluster;
   readonly dbConnectionSg: ISecurityGroup;
 }
@@ -59,12 +67,55 @@ export class TransferAuthFnConstruct extends Construct {
       timeout: Duration.seconds(30),
       logRetention: RetentionDays.FIVE_MONTHS,
       allowAllOutbound: true,
-      functionName: "TransferFamilyAuth"
+      functionName: "TransferFamilyAuth",
+      environment: {
+        // Logs every request (password masked) and response; leave off outside troubleshooting
+        DEBUG_LOGGING: 'false',
+        // Successful password logins are reused for this long; 0 disables the cache. Nothing evicts an entry
+        // when the user changes in the portal, so a disabled user or an old password keeps working for up to
+        // this long
+        AUTH_CACHE_TTL_SECONDS: '60',
+        AUTH_CACHE_MAX_ENTRIES: '1000',
+        // Missing or disabled usernames are refused without a database query for this long; 0 disables it
+        NEGATIVE_CACHE_TTL_SECONDS: '30',
+        NEGATIVE_CACHE_MAX_ENTRIES: '10000',
+        // Rebuild interval for the filter of enabled usernames; users added in the portal can't log in until
+        // the next rebuild. 0 disables the filter
+        USERNAME_FILTER_REFRESH_SECONDS: '0',
+        // A successful login with a hash at another cost rewrites it at this cost
+        BCRYPT_COST: String(BCRYPT_COST),
+        BCRYPT_REHASH: 'true',
+        // Where users are looked up: snapshot (falls back to RDS), rds or memory
+        IDENTITY_STORE: 'snapshot',
+        // Auth snapshot published by the portal to its own bucket, which only this function can read; an empty
+        // key always uses RDS. Snapshots older than the max age are ignored and logins fall back to RDS
+        AUTH_SNAPSHOT_KEY: 'auth-snapshot.bin',
+        AUTH_SNAPSHOT_MAX_AGE_SECONDS: '900',
+        AUTH_SNAPSHOT_CHECK_SECONDS: '30',
+        // Loads and JIT-warms the TLS, JDBC, bcrypt, JSON and S3 paths and opens the database connection during
+        // init, so the first login doesn't pay for them. Container images get neither SnapStart nor CRaC, so
+        // this is the only priming the function gets
+        COLD_START_PRIMING: 'true',
+        // Comma-separated users whose records, policies and keys a warm-up event pre-loads
+        WARMUP_USERS: '',
+      },
+    });
+
+    // Warms an execution environment ahead of a known login wave (e.g. a nightly batch window): refreshes
+    // parameters, the RDS token and connection, and pre-loads WARMUP_USERS. Enable and set the schedule to suit;
+    // each target invocation warms one environment
+    new Rule(this, 'TransferAuthFnWarmupRule', {
+      enabled: false,
+      schedule: Schedule.cron({minute: '55', hour: '0'}),
+      targets: [new LambdaFunction(this.transferAuthFn, {
+        event: RuleTargetInput.fromObject({warmup: true}),
+      })],
     });
 
 
   
     props.transferPublicKeysS3Bucket.grantRead(this.transferAuthFn);
+    props.authSnapshotS3Bucket.grantRead(this.transferAuthFn);
 
     const dbImportedSecurityGroupTransferAuth = SecurityGroup.fromSecurityGroupId(
       this,
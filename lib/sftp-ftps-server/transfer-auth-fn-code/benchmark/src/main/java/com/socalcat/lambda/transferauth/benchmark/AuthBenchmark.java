@@ -0,0 +1,261 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.DriverManager;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.google.gson.stream.JsonWriter;
+import com.socalcat.lambda.transferauth.AuthDataLoader;
+import com.socalcat.lambda.transferauth.AuthMetrics;
+import com.socalcat.lambda.transferauth.AuthSnapshotStore;
+import com.socalcat.lambda.transferauth.ConnectionHolder;
+import com.socalcat.lambda.transferauth.IdentityStore;
+import com.socalcat.lambda.transferauth.InMemoryIdentityStore;
+import com.socalcat.lambda.transferauth.LambdaFunctionHandler;
+import com.socalcat.lambda.transferauth.PublicKeyCache;
+import com.socalcat.lambda.transferauth.RdsIdentityStore;
+import com.socalcat.lambda.transferauth.SnapshotIdentityStore;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Configuration;
+
+/**
+ * Drives {@link LambdaFunctionHandler#handleRequest} with raw event JSON, as the Lambda runtime does,
+ * against an embedded database and a local SSM/S3 stand-in, and reports latency percentiles and
+ * allocations for each auth path.
+ * The handler is given an identity store built here over the embedded database and the stand-in's
+ * S3, so the handler itself has no local-run switches.
+ * Configuration is read from system properties; see benchmark/pom.xml for the defaults.
+ */
+public class AuthBenchmark {
+
+	static final String STORAGE_BUCKET = "benchmark-storage";
+	static final String KEYPAIR_BUCKET = "benchmark-keypairs";
+	private static final String PARAMETER_PATH = "/Applications/FileTransferAdminPortal/";
+	private static final String PASSWORD = "Benchmark-Password-1";
+
+	public static void main(String[] args) throws Exception {
+		int port = Integer.getInteger("benchmark.port", 4599);
+		int users = Integer.getInteger("benchmark.users", 100);
+		int mappings = Integer.getInteger("benchmark.mappings", 5);
+		int keys = Integer.getInteger("benchmark.keys", 2);
+		int iterations = Integer.getInteger("benchmark.iterations", 2000);
+		int warmup = Integer.getInteger("benchmark.warmup", 500);
+		int bcryptCost = Integer.getInteger("benchmark.bcryptCost", 12);
+		String[] paths = System.getProperty("benchmark.paths", "password,publickey,ftps").split(",");
+		String schema = System.getProperty("benchmark.schema", "../../../rds-init-fn-code/script.sql");
+		String jdbcUrl = System.getProperty("benchmark.jdbcUrl", "jdbc:h2:mem:FileTransferAdminPortal;MODE=MySQL;"
+				+ "DATABASE_TO_LOWER=FALSE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1");
+		String identityStoreType = System.getProperty("benchmark.identityStore", "rds");
+		String identityStoreFile = System.getProperty("benchmark.identityStoreFile", "target/identity-store.json");
+
+		System.out.println("Seeding " + users + " users with " + mappings + " mappings and " + keys
+				+ " keys each (bcrypt cost " + bcryptCost + ")");
+		BenchmarkDatabase db = new BenchmarkDatabase(jdbcUrl);
+		db.createSchema(schema);
+		String passwordHash = BCrypt.hashpw(PASSWORD, BCrypt.gensalt(bcryptCost));
+		db.seed(users, mappings, passwordHash);
+		if ("memory".equals(identityStoreType)) {
+			writeIdentityStoreFile(identityStoreFile, users, mappings, keys, passwordHash);
+		}
+
+		LocalAwsStandIn aws = new LocalAwsStandIn(port);
+		aws.putParameter(PARAMETER_PATH + "S3-Keypair-Bucket-Name", KEYPAIR_BUCKET);
+		aws.putParameter(PARAMETER_PATH + "S3-Keypair-Bucket-ARN", "arn:aws:s3:::" + KEYPAIR_BUCKET);
+		aws.putParameter(PARAMETER_PATH + "S3-Storage-Bucket-ARN", "arn:aws:s3:::" + STORAGE_BUCKET);
+		aws.putParameter(PARAMETER_PATH + "TransferS3AccessRole", "arn:aws:iam::123456789012:role/benchmark");
+		aws.putParameter(PARAMETER_PATH + "rds_endpoint", "localhost");
+		for (int u = 1; u <= users; u++) {
+			for (int k = 0; k < keys; k++) {
+				aws.putObject(KEYPAIR_BUCKET + "/" + username(u) + "/public-keys/key" + k + ".pub", publicKey(u, k) + "\n");
+			}
+		}
+		aws.start();
+		try {
+			/* The handler reads SSM and opens its clients in static init, so it's created only once the stand-in is up */
+			long initStart = System.nanoTime();
+			IdentityStore identityStore = identityStore(identityStoreType, identityStoreFile, jdbcUrl, port);
+			LambdaFunctionHandler handler = new LambdaFunctionHandler(identityStore);
+			System.out.printf("Handler init: %.1f ms%n", (System.nanoTime() - initStart) / 1e6);
+
+			Context context = new BenchmarkContext();
+			System.out.printf("%-10s %8s %10s %10s %10s %10s %14s%n",
+					"path", "n", "p50 ms", "p90 ms", "p99 ms", "max ms", "alloc KB/op");
+			for (String path : paths) {
+				measure(handler, context, path.trim(), users, warmup, false);
+				Result result = measure(handler, context, path.trim(), users, iterations, true);
+				System.out.printf("%-10s %8d %10.2f %10.2f %10.2f %10.2f %14.1f%n", path.trim(), iterations,
+						result.percentile(50), result.percentile(90), result.percentile(99), result.percentile(100),
+						result.allocatedBytes / 1024.0 / iterations);
+			}
+		} finally {
+			aws.stop();
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Builds the store IDENTITY_STORE would select in Lambda, but over the embedded database and the
+	 * stand-in's S3. No snapshot is published here, so "snapshot" measures its fallback to the database.
+	 */
+	private static IdentityStore identityStore(String type, String file, String jdbcUrl, int port) throws IOException {
+		if (type.equals("memory")) {
+			return InMemoryIdentityStore.fromFile(file);
+		}
+		S3AsyncClient s3 = S3AsyncClient.builder()
+				.region(Region.US_EAST_1)
+				.endpointOverride(URI.create("http://localhost:" + port))
+				.serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build())
+				.build();
+		AuthMetrics metrics = AuthMetrics.fromEnvironment();
+		IdentityStore rds = new RdsIdentityStore(new ConnectionHolder(() -> DriverManager.getConnection(jdbcUrl)),
+				new AuthDataLoader(), new PublicKeyCache(s3, KEYPAIR_BUCKET), metrics, 0);
+		switch (type) {
+		case "rds":
+			return rds;
+		case "snapshot":
+			return new SnapshotIdentityStore(AuthSnapshotStore.fromEnvironment(s3, null), rds, metrics);
+		default:
+			throw new IllegalArgumentException("Unknown benchmark identity store " + type);
+		}
+	}
+
+	static String username(int u) {
+		return String.format("bench-user-%05d", u);
+	}
+
+	private static String publicKey(int u, int k) {
+		return "ssh-rsa AAAAB3NzaC1yc2EAAAADAQABAAABAQC" + u + "x" + k + " " + username(u);
+	}
+
+	/**
+	 * Writes the same users, mappings and keys that were seeded into the database and the S3
+	 * stand-in, in the format InMemoryIdentityStore loads.
+	 */
+	private static void writeIdentityStoreFile(String file, int users, int mappings, int keys, String passwordHash)
+			throws IOException {
+		Path path = Paths.get(file);
+		if (path.getParent() != null) {
+			Files.createDirectories(path.getParent());
+		}
+		String expiration = LocalDateTime.now().plusYears(1).withNano(0).toString();
+		try (JsonWriter json = new JsonWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+			json.beginArray();
+			for (int u = 1; u <= users; u++) {
+				json.beginObject();
+				json.name("userId").value(u);
+				json.name("username").value(username(u));
+				json.name("passwordHash").value(passwordHash);
+				json.name("passwordExpiration").value(expiration);
+				json.name("directoryMappings").beginArray();
+				for (int m = 0; m < mappings; m++) {
+					json.beginObject();
+					json.name("entry").value("/folder" + m);
+					json.name("target").value("/" + STORAGE_BUCKET + "/" + username(u) + "/folder" + m);
+					json.name("write").value(m % 2 == 0);
+					json.endObject();
+				}
+				json.endArray();
+				json.name("publicKeys").beginArray();
+				for (int k = 0; k < keys; k++) {
+					json.value(publicKey(u, k));
+				}
+				json.endArray();
+				json.endObject();
+			}
+			json.endArray();
+		}
+	}
+
+	private static Result measure(LambdaFunctionHandler handler, Context context, String path, int users,
+			int iterations, boolean measure) throws IOException {
+		Random random = new Random(42);
+		long[] nanos = new long[iterations];
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		/* Events are encoded up front so their allocations aren't counted */
+		byte[][] events = new byte[users][];
+		for (int u = 0; u < users; u++) {
+			events[u] = event(path, username(1 + u));
+		}
+		ByteArrayOutputStream response = new ByteArrayOutputStream(4096);
+		long allocated = 0;
+		for (int i = 0; i < iterations; i++) {
+			ByteArrayInputStream event = new ByteArrayInputStream(events[random.nextInt(users)]);
+			response.reset();
+			/* Only the invocation on the calling thread is counted; async S3 I/O threads are excluded */
+			long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			handler.handleRequest(event, response, context);
+			nanos[i] = System.nanoTime() - start;
+			allocated += threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+			if (measure && !response.toString("UTF-8").contains("\"Role\"")) {
+				throw new IllegalStateException(path + " login failed: " + response.toString("UTF-8"));
+			}
+		}
+		return new Result(nanos, allocated);
+	}
+
+	/**
+	 * @return the event JSON Transfer Family sends for the path
+	 */
+	private static byte[] event(String path, String username) throws IOException {
+		StringWriter buffer = new StringWriter();
+		try (JsonWriter json = new JsonWriter(buffer)) {
+			json.beginObject();
+			json.name("username").value(username);
+			json.name("sourceIp").value("127.0.0.1");
+			json.name("serverId").value("s-benchmark");
+			switch (path) {
+			case "password":
+				json.name("protocol").value("SFTP");
+				json.name("password").value(PASSWORD);
+				break;
+			case "publickey":
+				json.name("protocol").value("SFTP");
+				break;
+			case "ftps":
+				json.name("protocol").value("FTPS");
+				json.name("password").value(PASSWORD);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown benchmark path " + path);
+			}
+			json.endObject();
+		}
+		return buffer.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static class Result {
+		private final long[] sortedNanos;
+		private final long allocatedBytes;
+
+		private Result(long[] nanos, long allocatedBytes) {
+			this.sortedNanos = nanos.clone();
+			Arrays.sort(this.sortedNanos);
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		private double percentile(int p) {
+			int index = (int) Math.ceil(p / 100.0 * sortedNanos.length) - 1;
+			return sortedNanos[Math.max(0, index)] / 1e6;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth.benchmark;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+/**
+ * Lambda context for benchmark runs. Log output is discarded so it doesn't dominate the timings.
+ */
+public class BenchmarkContext implements Context {
+
+	private static final LambdaLogger QUIET_LOGGER = message -> {
+	};
+
+	@Override
+	public String getAwsRequestId() {
+		return "benchmark";
+	}
+
+	@Override
+	public String getLogGroupName() {
+		return "benchmark";
+	}
+
+	@Override
+	public String getLogStreamName() {
+		return "benchmark";
+	}
+
+	@Override
+	public String getFunctionName() {
+		return "TransferFamilyAuth";
+	}
+
+	@Override
+	public String getFunctionVersion() {
+		return "$LATEST";
+	}
+
+	@Override
+	public String getInvokedFunctionArn() {
+		return "arn:aws:lambda:us-east-1:123456789012:function:TransferFamilyAuth";
+	}
+
+	@Override
+	public CognitoIdentity getIdentity() {
+		return null;
+	}
+
+	@Override
+	public ClientContext getClientContext() {
+		return null;
+	}
+
+	@Override
+	public int getRemainingTimeInMillis() {
+		return 30000;
+	}
+
+	@Override
+	public int getMemoryLimitInMB() {
+		return 512;
+	}
+
+	@Override
+	public LambdaLogger getLogger() {
+		return QUIET_LOGGER;
+	}
+}
@@ -0,0 +1,87 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Creates the auth tables in an embedded MySQL-mode H2 database from the same
+ * rds-init-fn-code/script.sql used to initialize RDS, and seeds benchmark users.
+ */
+public class BenchmarkDatabase {
+
+	/* Only the tables the auth Lambda reads; the rest of the script is MySQL administration */
+	private static final Pattern AUTH_TABLES = Pattern.compile(
+			"CREATE TABLE (IF NOT EXISTS )?`(organization|AppUser|directoryMapping)`.*?\\)\\s*ENGINE=[^;]*;",
+			Pattern.DOTALL);
+
+	private final String jdbcUrl;
+
+	public BenchmarkDatabase(String jdbcUrl) {
+		this.jdbcUrl = jdbcUrl;
+	}
+
+	public void createSchema(String schemaFile) throws IOException, SQLException {
+		String script = new String(Files.readAllBytes(Paths.get(schemaFile)), StandardCharsets.UTF_8);
+		Matcher m = AUTH_TABLES.matcher(script);
+		try (Connection con = DriverManager.getConnection(jdbcUrl); Statement st = con.createStatement()) {
+			while (m.find()) {
+				String ddl = m.group()
+						.replaceAll("\\)\\s*ENGINE=[^;]*;", ")")
+						.replace("b'1'", "TRUE");
+				st.execute(ddl);
+			}
+		}
+	}
+
+	/**
+	 * Inserts {@code users} enabled users sharing one password hash, each with {@code mappings} mappings.
+	 */
+	public void seed(int users, int mappings, String passwordHash) throws SQLException {
+		try (Connection con = DriverManager.getConnection(jdbcUrl)) {
+			con.setAutoCommit(false);
+			try (PreparedStatement ps = con.prepareStatement(
+					"INSERT INTO organization (id, description, active) VALUES (1, 'Benchmark', TRUE)")) {
+				ps.executeUpdate();
+			}
+			try (PreparedStatement user = con.prepareStatement(
+					"INSERT INTO AppUser (id, username, password, passwordExpiration, role, enabled, organizationId) "
+							+ "VALUES (?, ?, ?, ?, 'ROLE_USER', TRUE, 1)");
+					PreparedStatement mapping = con.prepareStatement(
+							"INSERT INTO directoryMapping (userId, entry, target, `write`) VALUES (?, ?, ?, ?)")) {
+				Timestamp expiration = Timestamp.valueOf(LocalDateTime.now().plusYears(1));
+				for (int u = 1; u <= users; u++) {
+					user.setLong(1, u);
+					user.setString(2, AuthBenchmark.username(u));
+					user.setString(3, passwordHash);
+					user.setTimestamp(4, expiration);
+					user.addBatch();
+				}
+				user.executeBatch();
+				for (int u = 1; u <= users; u++) {
+					for (int m = 0; m < mappings; m++) {
+						mapping.setLong(1, u);
+						mapping.setString(2, "/folder" + m);
+						mapping.setString(3, "/" + AuthBenchmark.STORAGE_BUCKET + "/" + AuthBenchmark.username(u) + "/folder" + m);
+						mapping.setBoolean(4, m % 2 == 0);
+						mapping.addBatch();
+					}
+				}
+				mapping.executeBatch();
+			}
+			con.commit();
+		}
+	}
+}
@@ -0,0 +1,167 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process HTTP stand-in for the two AWS APIs the auth Lambda calls:
+ * SSM GetParametersByPath and path-style S3 ListObjectsV2/GetObject.
+ * Only the request and response shapes the handler uses are implemented.
+ */
+public class LocalAwsStandIn {
+
+	private final HttpServer server;
+	private final Map<String, String> parameters = new HashMap<>();
+	private final SortedMap<String, byte[]> objects = new ConcurrentSkipListMap<>();
+
+	public LocalAwsStandIn(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		server.setExecutor(Executors.newFixedThreadPool(8));
+		server.createContext("/", this::handle);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+	}
+
+	public void putParameter(String name, String value) {
+		parameters.put(name, value);
+	}
+
+	/**
+	 * @param path "bucket/key"
+	 */
+	public void putObject(String path, String contents) {
+		objects.put(path, contents.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+			if (target != null && target.endsWith("GetParametersByPath")) {
+				drain(exchange);
+				respond(exchange, 200, "application/x-amz-json-1.1", parametersJson());
+			} else if ("GET".equals(exchange.getRequestMethod())) {
+				handleS3Get(exchange);
+			} else {
+				drain(exchange);
+				respond(exchange, 400, "text/plain", "Unsupported request".getBytes(StandardCharsets.UTF_8));
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void handleS3Get(HttpExchange exchange) throws IOException {
+		String path = URLDecoder.decode(exchange.getRequestURI().getRawPath(), "UTF-8").substring(1);
+		Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+		if (query.containsKey("list-type")) {
+			respond(exchange, 200, "application/xml", listXml(path, query.getOrDefault("prefix", "")));
+			return;
+		}
+		byte[] body = objects.get(path);
+		if (body == null) {
+			respond(exchange, 404, "application/xml",
+					"<Error><Code>NoSuchKey</Code><Message>Not found</Message></Error>".getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		exchange.getResponseHeaders().add("ETag", "\"" + md5(body) + "\"");
+		respond(exchange, 200, "application/octet-stream", body);
+	}
+
+	private byte[] parametersJson() {
+		StringBuilder sb = new StringBuilder("{\"Parameters\":[");
+		boolean first = true;
+		for (Map.Entry<String, String> p : parameters.entrySet()) {
+			if (!first) {
+				sb.append(',');
+			}
+			sb.append("{\"Name\":\"").append(p.getKey()).append("\",\"Type\":\"String\",\"Value\":\"")
+					.append(p.getValue()).append("\"}");
+			first = false;
+		}
+		return sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private byte[] listXml(String bucket, String prefix) {
+		String start = bucket + "/" + prefix;
+		StringBuilder contents = new StringBuilder();
+		int count = 0;
+		for (Map.Entry<String, byte[]> obj : objects.tailMap(start).entrySet()) {
+			if (!obj.getKey().startsWith(start)) {
+				break;
+			}
+			contents.append("<Contents><Key>").append(obj.getKey().substring(bucket.length() + 1))
+					.append("</Key><LastModified>2024-01-01T00:00:00.000Z</LastModified><ETag>&quot;")
+					.append(md5(obj.getValue())).append("&quot;</ETag><Size>").append(obj.getValue().length)
+					.append("</Size><StorageClass>STANDARD</StorageClass></Contents>");
+			count++;
+		}
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+				+ "<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">"
+				+ "<Name>" + bucket + "</Name><Prefix>" + prefix + "</Prefix><KeyCount>" + count + "</KeyCount>"
+				+ "<MaxKeys>1000</MaxKeys><IsTruncated>false</IsTruncated>" + contents + "</ListBucketResult>";
+		return xml.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+		Map<String, String> query = new HashMap<>();
+		if (rawQuery == null) {
+			return query;
+		}
+		for (String pair : rawQuery.split("&")) {
+			int eq = pair.indexOf('=');
+			String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+			String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+			query.put(name, value);
+		}
+		return query;
+	}
+
+	private static void drain(HttpExchange exchange) throws IOException {
+		byte[] buffer = new byte[8192];
+		while (exchange.getRequestBody().read(buffer) != -1) {
+			/* Discard request body */
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String contentType, byte[] body)
+			throws IOException {
+		exchange.getResponseHeaders().add("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	private static String md5(byte[] body) {
+		try {
+			StringBuilder hex = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("MD5").digest(body)) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads a user's status, password hash, expiration and directory mappings with one
+ * joined statement, so a login costs a single database round-trip.
+ */
+public class AuthDataLoader {
+
+	private static final String SQL = "SELECT a.id AS userId, a.username, a.enabled, a.password, a.passwordExpiration, "
+			+ "m.id AS directoryMappingId, m.entry, m.target, m.write "
+			+ "FROM AppUser a LEFT JOIN directoryMapping m ON m.userId = a.id "
+			+ "WHERE a.username = ? ORDER BY m.id";
+	private static final String ENABLED_USERNAMES_SQL = "SELECT username FROM AppUser WHERE enabled = 1";
+	private static final String UPDATE_PASSWORD_SQL = "UPDATE AppUser SET password = ? WHERE id = ? AND password = ?";
+
+	/**
+	 * @param con an open connection; it is not closed by this method
+	 * @param username the username presented by the client
+	 * @return the user's auth record, or null when no such user exists
+	 * @throws SQLException when the query fails
+	 */
+	public UserAuthRecord load(Connection con, String username) throws SQLException {
+		UserAuthRecord record = null;
+		try (PreparedStatement ps = con.prepareStatement(SQL)) {
+			ps.setString(1, username);
+			try (ResultSet rs = ps.executeQuery()) {
+				while (rs.next()) {
+					if (record == null) {
+						Timestamp expiration = rs.getTimestamp("passwordExpiration");
+						record = new UserAuthRecord(rs.getLong("userId"), rs.getString("username"),
+								rs.getBoolean("enabled"), rs.getString("password"),
+								expiration == null ? null : expiration.toLocalDateTime());
+					}
+					long directoryMappingId = rs.getLong("directoryMappingId");
+					/* LEFT JOIN yields a single row of nulls for users without mappings */
+					if (!rs.wasNull()) {
+						record.addDirectoryMapping(new DirectoryMapping(directoryMappingId, record.getUserId(),
+								rs.getString("entry"), rs.getString("target"), rs.getBoolean("write")));
+					}
+				}
+			}
+		}
+		return record;
+	}
+
+	/**
+	 * @param con an open connection; it is not closed by this method
+	 * @return the usernames of every enabled user
+	 * @throws SQLException when the query fails
+	 */
+	public List<String> loadEnabledUsernames(Connection con) throws SQLException {
+		List<String> usernames = new ArrayList<>();
+		try (PreparedStatement ps = con.prepareStatement(ENABLED_USERNAMES_SQL);
+				ResultSet rs = ps.executeQuery()) {
+			while (rs.next()) {
+				usernames.add(rs.getString("username"));
+			}
+		}
+		return usernames;
+	}
+
+	/**
+	 * @param con an open connection; it is not closed by this method
+	 * @return true if the user's password was still {@code currentHash} and has been replaced
+	 * @throws SQLException when the update fails
+	 */
+	public boolean updatePasswordHash(Connection con, long userId, String currentHash, String newHash)
+			throws SQLException {
+		try (PreparedStatement ps = con.prepareStatement(UPDATE_PASSWORD_SQL)) {
+			ps.setString(1, newHash);
+			ps.setLong(2, userId);
+			ps.setString(3, currentHash);
+			return ps.executeUpdate() == 1;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Short-lived, size-bounded LRU cache of successful password authentications.
+ * Clients that reconnect repeatedly with the same credentials skip both the database
+ * and bcrypt until the entry expires.
+ * Entries are keyed by the username and an HMAC of the presented password under a random key
+ * that never leaves this execution environment, so neither passwords nor offline-crackable
+ * hashes are held in memory.
+ * Nothing evicts an entry when the user changes in the portal: a disabled user, or the old
+ * password after a change, keeps authenticating until the entry expires, so keep the TTL short.
+ */
+public class AuthDecisionCache {
+
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+	private static final long DEFAULT_TTL_SECONDS = 60;
+	private static final int DEFAULT_MAX_ENTRIES = 1000;
+
+	private final long ttlMillis;
+	private final int maxEntries;
+	private SecretKeySpec hmacKey;
+	private final LinkedHashMap<String, CachedDecision> entries;
+
+	private static class CachedDecision {
+		private final AuthResponse response;
+		private final long expiresAtMillis;
+
+		private CachedDecision(AuthResponse response, long expiresAtMillis) {
+			this.response = response;
+			this.expiresAtMillis = expiresAtMillis;
+		}
+	}
+
+	public AuthDecisionCache(long ttlMillis, int maxEntries) {
+		this.ttlMillis = ttlMillis;
+		this.maxEntries = maxEntries;
+		this.hmacKey = newHmacKey();
+		this.entries = new LinkedHashMap<String, CachedDecision>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedDecision> eldest) {
+				return size() > AuthDecisionCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Builds a cache from the AUTH_CACHE_TTL_SECONDS and AUTH_CACHE_MAX_ENTRIES environment variables.
+	 * A TTL of 0 disables caching.
+	 */
+	public static AuthDecisionCache fromEnvironment() {
+		long ttlSeconds = EnvironmentSettings.getLong("AUTH_CACHE_TTL_SECONDS", DEFAULT_TTL_SECONDS);
+		int maxEntries = (int) EnvironmentSettings.getLong("AUTH_CACHE_MAX_ENTRIES", DEFAULT_MAX_ENTRIES);
+		return new AuthDecisionCache(ttlSeconds * 1000, maxEntries);
+	}
+
+	public boolean isEnabled() {
+		return ttlMillis > 0 && maxEntries > 0;
+	}
+
+	/**
+	 * @return the cached response, or null on a miss or an expired entry
+	 */
+	public synchronized AuthResponse get(String username, String password) {
+		if (!isEnabled()) {
+			return null;
+		}
+		String key = cacheKey(username, password);
+		CachedDecision decision = entries.get(key);
+		if (decision == null) {
+			return null;
+		}
+		if (System.currentTimeMillis() >= decision.expiresAtMillis) {
+			entries.remove(key);
+			return null;
+		}
+		return decision.response;
+	}
+
+	public synchronized void put(String username, String password, AuthResponse response) {
+		if (!isEnabled()) {
+			return;
+		}
+		entries.put(cacheKey(username, password), new CachedDecision(response, System.currentTimeMillis() + ttlMillis));
+	}
+
+	/**
+	 * Drops every entry and rotates the HMAC key, so environments restored from the same
+	 * snapshot don't share a key.
+	 */
+	public synchronized void reset() {
+		entries.clear();
+		hmacKey = newHmacKey();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private static SecretKeySpec newHmacKey() {
+		byte[] keyBytes = new byte[32];
+		new SecureRandom().nextBytes(keyBytes);
+		return new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+	}
+
+	private String cacheKey(String username, String password) {
+		try {
+			Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+			mac.init(hmacKey);
+			mac.update(username.getBytes(StandardCharsets.UTF_8));
+			mac.update((byte) 0);
+			byte[] digest = mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+			return username + ":" + Base64.getEncoder().encodeToString(digest);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Unable to compute " + HMAC_ALGORITHM, e);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * The only JSON codec on the invocation path. The event is decoded straight into an
+ * {@link AuthRequest} and the {@link AuthResponse} encoded from its fields by one shared Gson,
+ * with no intermediate maps or JSON trees. Log renderings never include the password.
+ */
+public class AuthJson {
+
+	private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+	private static final String MASKED_PASSWORD = "*******";
+
+	private AuthJson() {
+	}
+
+	/**
+	 * @throws IOException when the stream can't be read or isn't a JSON object
+	 */
+	public static AuthRequest readRequest(InputStream in) throws IOException {
+		/* Events are a few hundred bytes; a Reader over the stream would allocate an 8 KB decode buffer */
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+		byte[] chunk = new byte[512];
+		int read;
+		while ((read = in.read(chunk)) != -1) {
+			bytes.write(chunk, 0, read);
+		}
+		try {
+			AuthRequest request = GSON.fromJson(new String(bytes.toByteArray(), StandardCharsets.UTF_8), AuthRequest.class);
+			return request == null ? new AuthRequest() : request;
+		} catch (JsonParseException e) {
+			throw new IOException("Invalid auth request: " + e.getMessage(), e);
+		}
+	}
+
+	public static void writeResponse(AuthResponse response, OutputStream out) throws IOException {
+		out.write(GSON.toJson(response, AuthResponse.class).getBytes(StandardCharsets.UTF_8));
+		out.flush();
+	}
+
+	/**
+	 * @return the request as JSON with the password, if any, masked
+	 */
+	public static String toLogString(AuthRequest request) {
+		StringWriter buffer = new StringWriter(128);
+		try (JsonWriter json = new JsonWriter(buffer)) {
+			json.beginObject();
+			json.name("username").value(request.getUsername());
+			if (request.hasPassword()) {
+				json.name("password").value(MASKED_PASSWORD);
+			}
+			json.name("protocol").value(request.getProtocol());
+			json.name("serverId").value(request.getServerId());
+			json.name("sourceIp").value(request.getSourceIp());
+			if (request.isWarmup()) {
+				json.name("warmup").value(true);
+			}
+			json.endObject();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return buffer.toString();
+	}
+
+	public static String toLogString(AuthResponse response) {
+		return GSON.toJson(response, AuthResponse.class);
+	}
+}
@@ -0,0 +1,220 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Per-invocation latency breakdown of an authentication, written to stdout as one
+ * CloudWatch embedded metric format (EMF) record so phases can be graphed and alarmed on
+ * without parsing log text.
+ * Durations are measured with {@link System#nanoTime()} and reported in milliseconds.
+ * One instance is reused for every invocation in the execution environment.
+ */
+public class AuthMetrics {
+
+	/**
+	 * The timed phases of an authentication. A phase that didn't run in an invocation is omitted.
+	 */
+	public enum Phase {
+		INIT("InitMs"),
+		CACHE_LOOKUP("CacheLookupMs"),
+		CONNECT("ConnectMs"),
+		TOKEN("TokenMs"),
+		QUERY("QueryMs"),
+		BCRYPT("BcryptMs"),
+		/* Hashing the password again at the target cost after a login with an off-target hash */
+		REHASH("RehashMs"),
+		/* One hash at the target cost, timed during priming and reported with the first invocation */
+		BCRYPT_CALIBRATION("BcryptCalibrationMs"),
+		PUBLIC_KEYS("PublicKeysMs"),
+		POLICY("PolicyMs"),
+		USERNAME_FILTER("UsernameFilterRefreshMs"),
+		SNAPSHOT("SnapshotMs"),
+		/* Re-reading the SSM parameters during a warm-up */
+		PARAMETERS("ParametersMs");
+
+		private final String metricName;
+
+		Phase(String metricName) {
+			this.metricName = metricName;
+		}
+
+		public String getMetricName() {
+			return metricName;
+		}
+	}
+
+	private static final String DEFAULT_NAMESPACE = "FileTransferAdminPortal/Auth";
+	private static final Phase[] PHASES = Phase.values();
+
+	private final String namespace;
+	private final boolean enabled;
+	private final long[] phaseNanos = new long[PHASES.length];
+	private final boolean[] phaseRecorded = new boolean[PHASES.length];
+	private final StringWriter buffer = new StringWriter(1024);
+	private long startNanos;
+	private boolean coldStart;
+	private String requestId;
+	private String protocol;
+	private String outcome;
+	private boolean cacheHit;
+	private String rejectedBy;
+	private String source;
+	private int bcryptCost;
+
+	public AuthMetrics(String namespace, boolean enabled) {
+		this.namespace = namespace;
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Builds metrics from the METRICS_NAMESPACE and METRICS_ENABLED environment variables.
+	 */
+	public static AuthMetrics fromEnvironment() {
+		String namespace = System.getenv("METRICS_NAMESPACE");
+		String enabled = System.getenv("METRICS_ENABLED");
+		return new AuthMetrics(namespace == null || namespace.trim().isEmpty() ? DEFAULT_NAMESPACE : namespace.trim(),
+				enabled == null || !"false".equalsIgnoreCase(enabled.trim()));
+	}
+
+	/**
+	 * Clears the previous invocation and starts the total timer.
+	 */
+	public void begin(String requestId, String protocol, boolean coldStart) {
+		for (int i = 0; i < PHASES.length; i++) {
+			phaseNanos[i] = 0;
+			phaseRecorded[i] = false;
+		}
+		this.requestId = requestId;
+		this.protocol = protocol == null ? "Unknown" : protocol;
+		this.coldStart = coldStart;
+		this.outcome = "Unknown";
+		this.cacheHit = false;
+		this.rejectedBy = null;
+		this.source = null;
+		this.bcryptCost = 0;
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Adds the time elapsed since {@code phaseStartNanos} to the phase; a phase may be recorded more than once.
+	 */
+	public void record(Phase phase, long phaseStartNanos) {
+		recordNanos(phase, System.nanoTime() - phaseStartNanos);
+	}
+
+	public void recordNanos(Phase phase, long nanos) {
+		phaseNanos[phase.ordinal()] += nanos;
+		phaseRecorded[phase.ordinal()] = true;
+	}
+
+	public void setOutcome(String outcome) {
+		this.outcome = outcome;
+	}
+
+	public void setCacheHit(boolean cacheHit) {
+		this.cacheHit = cacheHit;
+	}
+
+	/**
+	 * Records which check refused an unknown username before the database was queried.
+	 */
+	public void setRejectedBy(String rejectedBy) {
+		this.rejectedBy = rejectedBy;
+	}
+
+	/**
+	 * Records where the user's auth data came from, e.g. "Snapshot" or "Database".
+	 */
+	public void setSource(String source) {
+		this.source = source;
+	}
+
+	/**
+	 * Records the cost of the stored hash a password was verified against.
+	 */
+	public void setBcryptCost(int bcryptCost) {
+		this.bcryptCost = bcryptCost;
+	}
+
+	/**
+	 * Stops the total timer and writes the EMF record to stdout.
+	 */
+	public void emit() {
+		if (!enabled) {
+			return;
+		}
+		long totalNanos = System.nanoTime() - startNanos;
+		System.out.println(render(totalNanos, System.currentTimeMillis()));
+	}
+
+	private String render(long totalNanos, long timestamp) {
+		buffer.getBuffer().setLength(0);
+		JsonWriter json = new JsonWriter(buffer);
+		try {
+			json.beginObject();
+			json.name("_aws").beginObject();
+			json.name("Timestamp").value(timestamp);
+			json.name("CloudWatchMetrics").beginArray().beginObject();
+			json.name("Namespace").value(namespace);
+			json.name("Dimensions").beginArray()
+					.beginArray().value("Protocol").value("Outcome").endArray()
+					.beginArray().value("ColdStart").endArray()
+					.endArray();
+			json.name("Metrics").beginArray();
+			writeMetricDefinition(json, "TotalMs");
+			for (int i = 0; i < PHASES.length; i++) {
+				if (phaseRecorded[i]) {
+					writeMetricDefinition(json, PHASES[i].getMetricName());
+				}
+			}
+			json.endArray();
+			json.endObject().endArray();
+			json.endObject();
+
+			json.name("Protocol").value(protocol);
+			json.name("Outcome").value(outcome);
+			json.name("ColdStart").value(coldStart ? "Cold" : "Warm");
+			json.name("AuthCacheHit").value(cacheHit);
+			if (rejectedBy != null) {
+				json.name("RejectedBy").value(rejectedBy);
+			}
+			if (source != null) {
+				json.name("Source").value(source);
+			}
+			if (bcryptCost > 0) {
+				json.name("BcryptCost").value(bcryptCost);
+			}
+			if (requestId != null) {
+				json.name("RequestId").value(requestId);
+			}
+			json.name("TotalMs").value(toMillis(totalNanos));
+			for (int i = 0; i < PHASES.length; i++) {
+				if (phaseRecorded[i]) {
+					json.name(PHASES[i].getMetricName()).value(toMillis(phaseNanos[i]));
+				}
+			}
+			json.endObject();
+			json.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return buffer.toString();
+	}
+
+	private static void writeMetricDefinition(JsonWriter json, String name) throws IOException {
+		json.beginObject().name("Name").value(name).name("Unit").value("Milliseconds").endObject();
+	}
+
+	/**
+	 * Milliseconds rounded to microsecond precision.
+	 */
+	private static double toMillis(long nanos) {
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+}
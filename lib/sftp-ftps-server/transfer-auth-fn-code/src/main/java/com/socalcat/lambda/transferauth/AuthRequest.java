@@ -0,0 +1,68 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.util.List;
+
+/**
+ * The event AWS Transfer Family sends a custom identity provider function.
+ * The password is absent for SFTP public key authentication.
+ * A scheduled warm-up event instead carries {@code "warmup": true} and optionally the usernames
+ * to pre-load; Transfer Family builds its events itself, so clients can't send one.
+ */
+public class AuthRequest {
+
+	private String username;
+	private String password;
+	private String protocol;
+	private String serverId;
+	private String sourceIp;
+	private boolean warmup;
+	private List<String> warmupUsers;
+
+	public AuthRequest() {
+	}
+
+	public AuthRequest(String username, String password, String protocol, String serverId, String sourceIp) {
+		this.username = username;
+		this.password = password;
+		this.protocol = protocol;
+		this.serverId = serverId;
+		this.sourceIp = sourceIp;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public boolean hasPassword() {
+		return password != null;
+	}
+
+	public String getProtocol() {
+		return protocol;
+	}
+
+	public String getServerId() {
+		return serverId;
+	}
+
+	public String getSourceIp() {
+		return sourceIp;
+	}
+
+	public boolean isWarmup() {
+		return warmup;
+	}
+
+	/**
+	 * @return the users to pre-load, or null to use the configured ones
+	 */
+	public List<String> getWarmupUsers() {
+		return warmupUsers;
+	}
+}
@@ -0,0 +1,91 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * The response returned to AWS Transfer Family. Transfer Family treats a response without a
+ * Role as a failed login; Result, Reason and Username only explain a failure in the logs.
+ * Unset fields are left out of the JSON. Instances are immutable, so a cached response can be
+ * returned as is.
+ */
+public class AuthResponse {
+
+	private static final AuthResponse EMPTY = new AuthResponse(null, null, null, null, null, null, null);
+
+	@SerializedName("Role")
+	private final String role;
+	@SerializedName("Policy")
+	private final String policy;
+	@SerializedName("HomeDirectoryType")
+	private final String homeDirectoryType;
+	@SerializedName("HomeDirectoryDetails")
+	private final String homeDirectoryDetails;
+	@SerializedName("PublicKeys")
+	private final List<String> publicKeys;
+	@SerializedName("Result")
+	private final String result;
+	@SerializedName("Reason")
+	private final String reason;
+	@SerializedName("Username")
+	private final String username;
+
+	private AuthResponse(String role, String policy, String homeDirectoryDetails, List<String> publicKeys,
+			String result, String reason, String username) {
+		this.role = role;
+		this.policy = policy;
+		this.homeDirectoryType = role == null ? null : "LOGICAL";
+		this.homeDirectoryDetails = homeDirectoryDetails;
+		this.publicKeys = publicKeys == null ? null : Collections.unmodifiableList(publicKeys);
+		this.result = result;
+		this.reason = reason;
+		this.username = username;
+	}
+
+	/**
+	 * @param publicKeys the keys to match for SFTP public key logins, or null for password logins
+	 */
+	public static AuthResponse success(String role, String policy, String homeDirectoryDetails,
+			List<String> publicKeys) {
+		return new AuthResponse(role, policy, homeDirectoryDetails, publicKeys, null, null, null);
+	}
+
+	public static AuthResponse failure(String reason, String username) {
+		return new AuthResponse(null, null, null, null, "Failed Authentication", reason, username);
+	}
+
+	/**
+	 * A refusal with nothing to explain, e.g. an FTPS login without a password.
+	 */
+	public static AuthResponse empty() {
+		return EMPTY;
+	}
+
+	public boolean isSuccess() {
+		return role != null;
+	}
+
+	public String getRole() {
+		return role;
+	}
+
+	public String getPolicy() {
+		return policy;
+	}
+
+	public String getHomeDirectoryDetails() {
+		return homeDirectoryDetails;
+	}
+
+	public List<String> getPublicKeys() {
+		return publicKeys;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+}
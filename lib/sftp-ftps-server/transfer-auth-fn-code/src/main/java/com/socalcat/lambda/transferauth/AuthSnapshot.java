@@ -0,0 +1,130 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Immutable, in-memory copy of the auth data published by the portal (AuthSnapshotWriter in the
+ * web app): every enabled user with their password hash, expiration, directory mappings and
+ * public keys.
+ *
+ * Format version 1, big-endian, strings in modified UTF-8 ({@link DataInputStream#readUTF()}):
+ * <pre>
+ * int magic "FTAS", short version, long generatedAtMillis, int userCount,
+ * per user: long id, UTF username, UTF passwordHash ("" when unset),
+ *           long passwordExpiration (epoch seconds of the LocalDateTime at UTC, Long.MIN_VALUE when unset),
+ *           int mappingCount, per mapping: long id, UTF entry, UTF target, boolean write,
+ *           int keyCount, per key: UTF publicKey
+ * int CRC32 of all preceding bytes
+ * </pre>
+ */
+public class AuthSnapshot {
+
+	public static final int MAGIC = 0x46544153;
+	public static final short FORMAT_VERSION = 1;
+	private static final long NO_EXPIRATION = Long.MIN_VALUE;
+
+	private final long generatedAtMillis;
+	private final Map<String, UserAuthRecord> users;
+	private final Map<String, List<String>> publicKeys;
+
+	private AuthSnapshot(long generatedAtMillis, Map<String, UserAuthRecord> users,
+			Map<String, List<String>> publicKeys) {
+		this.generatedAtMillis = generatedAtMillis;
+		this.users = users;
+		this.publicKeys = publicKeys;
+	}
+
+	/**
+	 * @throws IOException when the bytes aren't a complete, uncorrupted snapshot of a supported version
+	 */
+	public static AuthSnapshot read(byte[] bytes) throws IOException {
+		if (bytes.length < 4) {
+			throw new IOException("Auth snapshot is truncated");
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length - 4);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not an auth snapshot");
+		}
+		short version = in.readShort();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unsupported auth snapshot version " + version);
+		}
+		long generatedAtMillis = in.readLong();
+		int userCount = in.readInt();
+		Map<String, UserAuthRecord> users = new HashMap<>(userCount * 4 / 3 + 1);
+		Map<String, List<String>> publicKeys = new HashMap<>();
+		for (int u = 0; u < userCount; u++) {
+			long userId = in.readLong();
+			String username = in.readUTF();
+			String passwordHash = in.readUTF();
+			long expiration = in.readLong();
+			UserAuthRecord record = new UserAuthRecord(userId, username, true,
+					passwordHash.isEmpty() ? null : passwordHash,
+					expiration == NO_EXPIRATION ? null : LocalDateTime.ofEpochSecond(expiration, 0, ZoneOffset.UTC));
+			int mappingCount = in.readInt();
+			for (int m = 0; m < mappingCount; m++) {
+				record.addDirectoryMapping(new DirectoryMapping(in.readLong(), userId, in.readUTF(), in.readUTF(),
+						in.readBoolean()));
+			}
+			int keyCount = in.readInt();
+			List<String> keys = new ArrayList<>(keyCount);
+			for (int k = 0; k < keyCount; k++) {
+				keys.add(in.readUTF());
+			}
+			String key = normalize(username);
+			users.put(key, record);
+			if (!keys.isEmpty()) {
+				publicKeys.put(key, Collections.unmodifiableList(keys));
+			}
+		}
+		if (in.readInt() != (int) crc.getValue()) {
+			throw new IOException("Auth snapshot checksum mismatch");
+		}
+		return new AuthSnapshot(generatedAtMillis, users, publicKeys);
+	}
+
+	public long getGeneratedAtMillis() {
+		return generatedAtMillis;
+	}
+
+	/**
+	 * @return the enabled user with this username, or null if there is none
+	 */
+	public UserAuthRecord find(String username) {
+		return username == null ? null : users.get(normalize(username));
+	}
+
+	/**
+	 * @return the user's public keys, empty if they have none
+	 */
+	public List<String> getPublicKeys(String username) {
+		List<String> keys = username == null ? null : publicKeys.get(normalize(username));
+		return keys == null ? Collections.<String>emptyList() : keys;
+	}
+
+	public int size() {
+		return users.size();
+	}
+
+	/**
+	 * Usernames are matched case-insensitively, as MySQL compares them.
+	 */
+	private static String normalize(String username) {
+		return username.toLowerCase(Locale.ROOT);
+	}
+}
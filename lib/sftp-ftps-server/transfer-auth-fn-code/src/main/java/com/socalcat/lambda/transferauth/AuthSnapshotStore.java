@@ -0,0 +1,110 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+/**
+ * Keeps the portal's published {@link AuthSnapshot} in memory.
+ * At most once per check interval the object is re-requested with its ETag, so an unchanged
+ * snapshot costs a 304 and nothing is parsed. A snapshot older than the maximum age is
+ * treated as stale and logins fall back to the database until a newer one is published.
+ */
+public class AuthSnapshotStore {
+
+	public static final String DEFAULT_KEY = "auth-snapshot.bin";
+	private static final long DEFAULT_MAX_AGE_SECONDS = 900;
+	private static final long DEFAULT_CHECK_SECONDS = 30;
+
+	private final S3AsyncClient s3;
+	private final String bucketName;
+	private final String key;
+	private final long maxAgeMillis;
+	private final long checkIntervalMillis;
+	private AuthSnapshot snapshot;
+	private String eTag;
+	private long lastCheckMillis;
+
+	public AuthSnapshotStore(S3AsyncClient s3, String bucketName, String key, long maxAgeMillis,
+			long checkIntervalMillis) {
+		this.s3 = s3;
+		this.bucketName = bucketName;
+		this.key = key;
+		this.maxAgeMillis = maxAgeMillis;
+		this.checkIntervalMillis = checkIntervalMillis;
+	}
+
+	/**
+	 * Builds a store from the AUTH_SNAPSHOT_KEY, AUTH_SNAPSHOT_MAX_AGE_SECONDS and
+	 * AUTH_SNAPSHOT_CHECK_SECONDS environment variables. An empty key, or no bucket, disables the
+	 * snapshot.
+	 */
+	public static AuthSnapshotStore fromEnvironment(S3AsyncClient s3, String bucketName) {
+		String key = System.getenv("AUTH_SNAPSHOT_KEY");
+		return new AuthSnapshotStore(s3, bucketName, key == null ? DEFAULT_KEY : key.trim(),
+				EnvironmentSettings.getLong("AUTH_SNAPSHOT_MAX_AGE_SECONDS", DEFAULT_MAX_AGE_SECONDS) * 1000,
+				EnvironmentSettings.getLong("AUTH_SNAPSHOT_CHECK_SECONDS", DEFAULT_CHECK_SECONDS) * 1000);
+	}
+
+	public boolean isEnabled() {
+		return bucketName != null && !key.isEmpty() && maxAgeMillis > 0;
+	}
+
+	/**
+	 * Returns the snapshot, re-checking S3 first if the check interval has passed.
+	 *
+	 * @return the current snapshot, or null when there is none or it is stale
+	 */
+	public synchronized AuthSnapshot current() {
+		if (!isEnabled()) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		if (now - lastCheckMillis >= checkIntervalMillis) {
+			lastCheckMillis = now;
+			refresh();
+		}
+		if (snapshot == null || now - snapshot.getGeneratedAtMillis() > maxAgeMillis) {
+			return null;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Forces the next {@link #current()} call to re-check S3.
+	 */
+	public synchronized void invalidate() {
+		lastCheckMillis = 0;
+	}
+
+	private void refresh() {
+		GetObjectRequest request = GetObjectRequest.builder()
+				.bucket(bucketName)
+				.key(key)
+				.ifNoneMatch(eTag)
+				.build();
+		try {
+			ResponseBytes<GetObjectResponse> bytes = s3.getObject(request, AsyncResponseTransformer.toBytes()).join();
+			AuthSnapshot loaded = AuthSnapshot.read(bytes.asByteArray());
+			snapshot = loaded;
+			eTag = bytes.response().eTag();
+			System.out.println("Loaded auth snapshot with " + loaded.size() + " users");
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof S3Exception && ((S3Exception) cause).statusCode() == 304) {
+				return;
+			}
+			System.out.println("Unable to load auth snapshot " + key + ": " + cause.getMessage());
+		} catch (IOException e) {
+			System.out.println("Ignoring invalid auth snapshot " + key + ": " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,98 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.rds.RdsUtilities;
+import software.amazon.awssdk.services.rds.model.GenerateAuthenticationTokenRequest;
+
+/**
+ * Caches the RDS IAM authentication token for most of its 15 minute validity.
+ * Once a token passes the refresh point a replacement is signed in the background while
+ * callers keep using the current one; only a token that is about to expire is refreshed
+ * on the calling thread.
+ */
+public class AuthTokenProvider {
+
+	private static final long REFRESH_AFTER_MILLIS = 10 * 60 * 1000L;
+	private static final long EXPIRE_AFTER_MILLIS = 14 * 60 * 1000L;
+	private static final ExecutorService REFRESH_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "rds-auth-token-refresh");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final GenerateAuthenticationTokenRequest request;
+	private final RdsUtilities rdsUtilities;
+	private final AtomicBoolean refreshing = new AtomicBoolean(false);
+	private volatile String token;
+	private volatile long issuedAtMillis;
+
+	public AuthTokenProvider(String hostname, int port, String username, Region region) {
+		AwsCredentialsProvider credentialsProvider = DefaultCredentialsProvider.create();
+		this.request = GenerateAuthenticationTokenRequest.builder()
+				.hostname(hostname)
+				.port(port)
+				.username(username)
+				.credentialsProvider(credentialsProvider)
+				.region(region)
+				.build();
+		this.rdsUtilities = RdsUtilities.builder()
+				.credentialsProvider(credentialsProvider)
+				.region(region)
+				.build();
+	}
+
+	/**
+	 * @return a token valid for at least another minute
+	 */
+	public String getToken() {
+		long age = System.currentTimeMillis() - issuedAtMillis;
+		if (token == null || age >= EXPIRE_AFTER_MILLIS) {
+			return refresh();
+		}
+		if (age >= REFRESH_AFTER_MILLIS && refreshing.compareAndSet(false, true)) {
+			REFRESH_EXECUTOR.execute(() -> {
+				try {
+					refresh();
+				} catch (RuntimeException e) {
+					System.out.println("Background RDS token refresh failed: " + e.getMessage());
+				} finally {
+					refreshing.set(false);
+				}
+			});
+		}
+		return token;
+	}
+
+	/**
+	 * Discards the cached token, e.g. after a snapshot restore when it may already be stale.
+	 */
+	public synchronized void invalidate() {
+		token = null;
+		issuedAtMillis = 0;
+	}
+
+	/**
+	 * Signs a new token immediately and makes it the cached one.
+	 * 
+	 * @return the new token
+	 */
+	public synchronized String refresh() {
+		long now = System.currentTimeMillis();
+		/* Another thread may have refreshed while this one waited for the lock */
+		if (token != null && now - issuedAtMillis < REFRESH_AFTER_MILLIS) {
+			return token;
+		}
+		String newToken = rdsUtilities.generateAuthenticationToken(request);
+		issuedAtMillis = now;
+		token = newToken;
+		return newToken;
+	}
+}
@@ -0,0 +1,70 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+
+/**
+ * Checkpoint/restore hooks for the auth Lambda (SnapStart or any CRaC runtime).
+ * Before the snapshot is taken the priming hook runs, so the JDBC driver, TLS stack, bcrypt,
+ * JSON and S3 client classes are loaded and JIT-warmed in the image, then the checkpoint hook
+ * releases connections that can't survive a snapshot. After restore the restore hook
+ * re-establishes connections and any state that must not be shared between restored environments.
+ * Set COLD_START_PRIMING=true to also prime during a regular (non-snapshot) init. The function is
+ * deployed as a Java 8 container image, which supports neither SnapStart nor CRaC, so there the
+ * checkpoint hooks never run and COLD_START_PRIMING is the only way priming happens.
+ */
+public class ColdStartPrimer implements Resource {
+
+	private final Runnable primeHook;
+	private final Runnable checkpointHook;
+	private final Runnable restoreHook;
+
+	private ColdStartPrimer(Runnable primeHook, Runnable checkpointHook, Runnable restoreHook) {
+		this.primeHook = primeHook;
+		this.checkpointHook = checkpointHook;
+		this.restoreHook = restoreHook;
+	}
+
+	/**
+	 * Registers the hooks with the global CRaC context and, when COLD_START_PRIMING is set,
+	 * runs the priming hook immediately.
+	 * 
+	 * @return the registered resource; callers must keep a reference to it
+	 */
+	public static ColdStartPrimer register(Runnable primeHook, Runnable checkpointHook, Runnable restoreHook) {
+		ColdStartPrimer primer = new ColdStartPrimer(primeHook, checkpointHook, restoreHook);
+		Core.getGlobalContext().register(primer);
+		if (Boolean.parseBoolean(System.getenv("COLD_START_PRIMING"))) {
+			primer.prime();
+		}
+		return primer;
+	}
+
+	@Override
+	public void beforeCheckpoint(Context<? extends Resource> context) throws Exception {
+		System.out.println("Priming before checkpoint");
+		prime();
+		checkpointHook.run();
+	}
+
+	@Override
+	public void afterRestore(Context<? extends Resource> context) throws Exception {
+		long start = System.currentTimeMillis();
+		restoreHook.run();
+		System.out.println("Restored in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	private void prime() {
+		long start = System.currentTimeMillis();
+		try {
+			primeHook.run();
+		} catch (RuntimeException e) {
+			/* Priming is best effort; a failure here must not stop the function from starting */
+			System.out.println("Priming failed: " + e.getMessage());
+		}
+		System.out.println("Primed in " + (System.currentTimeMillis() - start) + " ms");
+	}
+}
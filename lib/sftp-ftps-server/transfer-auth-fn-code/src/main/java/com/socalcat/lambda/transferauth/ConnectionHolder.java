@@ -0,0 +1,74 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Holds a single JDBC connection for the lifetime of the Lambda execution environment.
+ * Warm invocations reuse the same physical connection instead of paying for a TLS
+ * handshake and IAM token on every query.  The connection is validated each time it is
+ * borrowed and transparently re-opened if the database closed it while the sandbox was frozen.
+ */
+public class ConnectionHolder {
+
+	/**
+	 * Opens a new physical connection to the database, throwing the driver's SQLException when it
+	 * can't, so the caller sees why.
+	 */
+	public interface ConnectionFactory {
+		Connection open() throws SQLException;
+	}
+
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+	private final ConnectionFactory factory;
+	private Connection connection;
+
+	public ConnectionHolder(ConnectionFactory factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * Returns the held connection, re-opening it if it is missing or no longer valid.
+	 * Callers must not close the returned connection; use {@link #invalidate()} instead
+	 * when a statement fails in a way that leaves the connection unusable.
+	 *
+	 * @return an open connection
+	 * @throws SQLException when a new connection can't be opened
+	 */
+	public synchronized Connection borrow() throws SQLException {
+		if (connection != null && !isUsable(connection)) {
+			invalidate();
+		}
+		if (connection == null) {
+			connection = factory.open();
+			if (connection == null) {
+				throw new SQLException("Unable to open database connection");
+			}
+		}
+		return connection;
+	}
+
+	/**
+	 * Closes and discards the held connection so the next borrow opens a fresh one.
+	 */
+	public synchronized void invalidate() {
+		if (connection != null) {
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				/* Connection is already broken; nothing more to do */
+			}
+			connection = null;
+		}
+	}
+
+	private static boolean isUsable(Connection con) {
+		try {
+			return !con.isClosed() && con.isValid(VALIDATION_TIMEOUT_SECONDS);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the function's tuning settings from environment variables.
+ */
+public final class EnvironmentSettings {
+
+	private EnvironmentSettings() {
+	}
+
+	/**
+	 * @return the variable's value, or {@code defaultValue} when it is unset, blank or not a number
+	 */
+	public static long getLong(String name, long defaultValue) {
+		String value = System.getenv(name);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			System.out.println("Ignoring invalid " + name + "=" + value);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @return the variable's value clamped to min..max, or {@code defaultValue} when it is unset, blank
+	 *         or not a number
+	 */
+	public static long getLong(String name, long defaultValue, long min, long max) {
+		long value = getLong(name, defaultValue);
+		if (value < min || value > max) {
+			long clamped = Math.max(min, Math.min(max, value));
+			System.out.println(name + "=" + value + " is outside " + min + ".." + max + ", using " + clamped);
+			return clamped;
+		}
+		return value;
+	}
+
+	/**
+	 * @return the variable's comma-separated values, trimmed, or an empty list when it is unset or blank
+	 */
+	public static List<String> getList(String name) {
+		String value = System.getenv(name);
+		if (value == null) {
+			return Collections.emptyList();
+		}
+		List<String> values = new ArrayList<>();
+		for (String item : value.split(",")) {
+			if (!item.trim().isEmpty()) {
+				values.add(item.trim());
+			}
+		}
+		return Collections.unmodifiableList(values);
+	}
+}
@@ -0,0 +1,52 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.util.List;
+
+/**
+ * Source of the user data an authentication decision is made from.
+ * The handler owns the decision itself (enabled check, bcrypt, expiration, policy); a store only
+ * answers lookups. Select an implementation with the IDENTITY_STORE environment variable.
+ */
+public interface IdentityStore {
+
+	/**
+	 * @return the user's auth record, or null when no such user exists
+	 * @throws IdentityStoreException when the store couldn't be read; the user may exist
+	 */
+	UserAuthRecord findUser(String username) throws IdentityStoreException;
+
+	/**
+	 * @return the text of each of the user's SFTP public keys, empty if they have none
+	 */
+	List<String> getPublicKeys(String username);
+
+	/**
+	 * A cheap pre-check run before {@link #findUser(String)}.
+	 *
+	 * @return false only if the username certainly isn't an enabled user
+	 */
+	default boolean mightExist(String username) {
+		return true;
+	}
+
+	/**
+	 * Replaces the user's password hash, but only if it is still {@code currentHash}, so a password
+	 * changed in the portal meanwhile is never overwritten.
+	 *
+	 * @return true if the hash was replaced; stores that can't be written return false
+	 * @throws IdentityStoreException when the store couldn't be written
+	 */
+	default boolean updatePasswordHash(UserAuthRecord authRecord, String currentHash, String newHash)
+			throws IdentityStoreException {
+		return false;
+	}
+
+	/**
+	 * Drops anything derived from the backing data, e.g. after the execution environment is
+	 * restored from a snapshot.
+	 */
+	default void reset() {
+	}
+}
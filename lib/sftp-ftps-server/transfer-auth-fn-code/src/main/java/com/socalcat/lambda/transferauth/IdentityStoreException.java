@@ -0,0 +1,15 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+/**
+ * Thrown when an {@link IdentityStore} can't answer a lookup.
+ */
+public class IdentityStoreException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	public IdentityStoreException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
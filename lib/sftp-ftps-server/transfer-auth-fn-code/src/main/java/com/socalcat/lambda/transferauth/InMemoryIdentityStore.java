@@ -0,0 +1,123 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Identity store held entirely in memory, for tests, benchmarks and local runs.
+ * Users can be added with {@link #put} or loaded from a JSON file of the form
+ * <pre>
+ * [{"userId": 1, "username": "alice", "enabled": true, "passwordHash": "$2a$12$...",
+ *   "passwordExpiration": "2030-01-01T00:00:00",
+ *   "directoryMappings": [{"entry": "/", "target": "/bucket/alice", "write": true}],
+ *   "publicKeys": ["ssh-rsa AAAA..."]}]
+ * </pre>
+ */
+public class InMemoryIdentityStore implements IdentityStore {
+
+	private final Map<String, UserAuthRecord> users = new ConcurrentHashMap<>();
+	private final Map<String, List<String>> publicKeys = new ConcurrentHashMap<>();
+
+	public static InMemoryIdentityStore fromFile(String path) throws IOException {
+		try (Reader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+			return fromJson(reader);
+		}
+	}
+
+	public static InMemoryIdentityStore fromJson(Reader reader) {
+		InMemoryIdentityStore store = new InMemoryIdentityStore();
+		JsonArray array = JsonParser.parseReader(reader).getAsJsonArray();
+		for (JsonElement element : array) {
+			JsonObject user = element.getAsJsonObject();
+			UserAuthRecord record = new UserAuthRecord(
+					user.get("userId").getAsLong(),
+					user.get("username").getAsString(),
+					!user.has("enabled") || user.get("enabled").getAsBoolean(),
+					getString(user, "passwordHash"),
+					user.has("passwordExpiration") && !user.get("passwordExpiration").isJsonNull()
+							? LocalDateTime.parse(user.get("passwordExpiration").getAsString())
+							: null);
+			if (user.has("directoryMappings")) {
+				long mappingId = 0;
+				for (JsonElement m : user.getAsJsonArray("directoryMappings")) {
+					JsonObject mapping = m.getAsJsonObject();
+					record.addDirectoryMapping(new DirectoryMapping(++mappingId, record.getUserId(),
+							mapping.get("entry").getAsString(), mapping.get("target").getAsString(),
+							mapping.has("write") && mapping.get("write").getAsBoolean()));
+				}
+			}
+			List<String> keys = new ArrayList<>();
+			if (user.has("publicKeys")) {
+				for (JsonElement key : user.getAsJsonArray("publicKeys")) {
+					keys.add(key.getAsString());
+				}
+			}
+			store.put(record, keys);
+		}
+		return store;
+	}
+
+	public void put(UserAuthRecord record, List<String> keys) {
+		String key = normalize(record.getUsername());
+		users.put(key, record);
+		publicKeys.put(key, Collections.unmodifiableList(new ArrayList<>(keys)));
+	}
+
+	public void remove(String username) {
+		users.remove(normalize(username));
+		publicKeys.remove(normalize(username));
+	}
+
+	@Override
+	public UserAuthRecord findUser(String username) {
+		return username == null ? null : users.get(normalize(username));
+	}
+
+	@Override
+	public List<String> getPublicKeys(String username) {
+		List<String> keys = username == null ? null : publicKeys.get(normalize(username));
+		return keys == null ? Collections.<String>emptyList() : keys;
+	}
+
+	@Override
+	public synchronized boolean updatePasswordHash(UserAuthRecord authRecord, String currentHash, String newHash) {
+		String key = normalize(authRecord.getUsername());
+		UserAuthRecord existing = users.get(key);
+		if (existing == null || currentHash == null || !currentHash.equals(existing.getPasswordHash())) {
+			return false;
+		}
+		UserAuthRecord updated = new UserAuthRecord(existing.getUserId(), existing.getUsername(),
+				existing.isEnabled(), newHash, existing.getPasswordExpiration());
+		existing.getDirectoryMappings().forEach(updated::addDirectoryMapping);
+		users.put(key, updated);
+		return true;
+	}
+
+	private static String getString(JsonObject object, String name) {
+		return object.has(name) && !object.get(name).isJsonNull() ? object.get(name).getAsString() : null;
+	}
+
+	/**
+	 * Usernames are matched case-insensitively, as MySQL compares them.
+	 */
+	private static String normalize(String username) {
+		return username.toLowerCase(Locale.ROOT);
+	}
+}
@@ -2,73 +2,79 @@
 // SPDX-License-Identifier: MIT-0
 package com.socalcat.lambda.transferauth;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
-import java.security.GeneralSecurityException;
-import java.security.KeyStore;
 import java.sql.Connection;
 import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
-import org.mindrot.jbcrypt.BCrypt;
 import software.amazon.awssdk.services.ssm.*;
 import software.amazon.awssdk.services.ssm.model.*;
-import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
-import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.rds.RdsUtilities;
-import software.amazon.awssdk.services.rds.model.GenerateAuthenticationTokenRequest;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.GetObjectRequest;
-import software.amazon.awssdk.services.s3.model.GetObjectResponse;
-import software.amazon.awssdk.services.s3.model.ListObjectsRequest;
-import software.amazon.awssdk.services.s3.model.ListObjectsResponse;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
-import com.amazonaws.services.lambda.runtime.RequestHandler;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import org.json.*;
-import java.util.ArrayList;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Locale;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 import java.net.URI;
-import java.security.cert.CertificateFactory;
-import java.security.cert.X509Certificate;
 
-public class LambdaFunctionHandler implements RequestHandler<Map<String, String>, Map<String, Object>> {
-	private static S3Client s3;
+/**
+ * Custom identity provider for AWS Transfer Family.
+ * The event and response are (de)serialized by {@link AuthJson} rather than the runtime, so the
+ * response keys keep the capitalization Transfer Family expects.
+ * Set DEBUG_LOGGING=true to log each request (password masked) and response.
+ */
+public class LambdaFunctionHandler implements RequestStreamHandler {
+	private static PublicKeyCache publicKeyCache;
+	private static PolicyRenderer policyRenderer;
+	private static IdentityStore identityStore;
 	private static String S3_KEYPAIR_BUCKET_NAME;
+	private static String S3_AUTH_SNAPSHOT_BUCKET_NAME;
 	private static String S3_STORAGE_BUCKET_ARN;
 	private static String S3_KEYPAIR_BUCKET_ARN;
-	private List<DirectoryMapping> directoryMappings = new ArrayList<>();
 	private static String TRANSFER_ROLE_ARN;
 	private static String SSM_VPC_ENDPOINT;
 	private static String DB_ENDPOINT;
 	private String username;
-	private static final String POLICY_HEADER = "\"Version\": \"2012-10-17\", \"Statement\":";
-	private Map<String, Object> data_ret = new HashMap<>();
 	private LambdaLogger logger;
+	private static final boolean DEBUG_LOGGING = Boolean.parseBoolean(System.getenv("DEBUG_LOGGING"));
 	private static final String region = System.getenv("AWS_REGION");
 	private static Region REGION = Region.of(region);
 	private static final String ssm_vpc_endpoint = "https://ssm." + region + ".amazonaws.com";
-	public static final String SSL_CERTIFICATE = "rds-ca-2019-root.pem";
-	private static final String KEY_STORE_TYPE = "JKS";
-	private static final String KEY_STORE_PROVIDER = "SUN";
-	private static final String KEY_STORE_FILE_PREFIX = "sys-connect-via-ssl-test-cacerts";
-	private static final String KEY_STORE_FILE_SUFFIX = ".jks";
-	private static final String DEFAULT_KEY_STORE_PASSWORD = "delivery";
+	/* Lives as long as the execution environment so warm invocations reuse one connection */
+	private static final ConnectionHolder CONNECTION_HOLDER = new ConnectionHolder(LambdaFunctionHandler::openConnection);
+	private static final AuthDataLoader AUTH_DATA_LOADER = new AuthDataLoader();
+	private static AuthTokenProvider authTokenProvider;
+	private static final AuthDecisionCache AUTH_DECISION_CACHE = AuthDecisionCache.fromEnvironment();
+	private static final AuthMetrics METRICS = AuthMetrics.fromEnvironment();
+	private static final NegativeAuthCache NEGATIVE_AUTH_CACHE = NegativeAuthCache.fromEnvironment();
+	private static final PasswordHasher PASSWORD_HASHER = PasswordHasher.fromEnvironment();
+	/* Hash each user was last rehashed from; a snapshot keeps serving it until the portal republishes */
+	private static final Map<Long, String> REHASHED_FROM = new ConcurrentHashMap<>();
+	private static long bcryptCalibrationNanos;
+	private static boolean primed;
+	private static final List<String> WARMUP_USERS = EnvironmentSettings.getList("WARMUP_USERS");
+	private static SsmClient ssm;
+	private static S3AsyncClient s3;
+	private boolean authLookupFailed;
+	/* Replaces the environment's store for this handler only; null uses the one IDENTITY_STORE selects */
+	private final IdentityStore injectedIdentityStore;
+	private static final long INIT_START_NANOS = System.nanoTime();
+	private static long initNanos;
+	private static boolean coldStart = true;
 	
 	static {
 		SSM_VPC_ENDPOINT = System.getenv("SSM_VPC_ENDPOINT") == null
@@ -80,23 +86,85 @@ public class LambdaFunctionHandler implements RequestHandler<Map<String, String>
 		System.out.println("Initializing... MindrotV1");
 		init();
 	}
+
+	private static final String PRIMING_USERNAME = "__priming__";
+	private static final ColdStartPrimer COLD_START_PRIMER = ColdStartPrimer.register(
+			LambdaFunctionHandler::prime,
+			LambdaFunctionHandler::releaseForCheckpoint,
+			LambdaFunctionHandler::restore);
+
+	static {
+		initNanos = System.nanoTime() - INIT_START_NANOS;
+	}
+
+	public LambdaFunctionHandler() {
+		this(null);
+	}
+
+	/**
+	 * Looks users up in the given store instead of the one IDENTITY_STORE selects, so a caller outside
+	 * Lambda (e.g. the benchmark module) can supply a store over its own database and S3 endpoint.
+	 */
+	public LambdaFunctionHandler(IdentityStore identityStore) {
+		this.injectedIdentityStore = identityStore;
+	}
 	
 	@Override
-	public Map<String, Object> handleRequest(Map<String, String> event, Context context) {
-		data_ret =new HashMap<>();
-		directoryMappings = new ArrayList<>();
-		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+	public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+		AuthRequest request = AuthJson.readRequest(input);
+		AuthJson.writeResponse(handleRequest(request, context), output);
+	}
+
+	public AuthResponse handleRequest(AuthRequest request, Context context) {
+		METRICS.begin(context.getAwsRequestId(), request.getProtocol(), coldStart);
+		if (coldStart) {
+			METRICS.recordNanos(AuthMetrics.Phase.INIT, initNanos);
+			if (bcryptCalibrationNanos > 0) {
+				METRICS.recordNanos(AuthMetrics.Phase.BCRYPT_CALIBRATION, bcryptCalibrationNanos);
+			}
+			coldStart = false;
+		}
+		try {
+			return request.isWarmup() ? warmUp(request, context) : authenticate(request, context);
+		} catch (RuntimeException e) {
+			METRICS.setOutcome("Error");
+			throw e;
+		} finally {
+			METRICS.emit();
+		}
+	}
+
+	private AuthResponse authenticate(AuthRequest request, Context context) {
 		logger = context.getLogger();
-		String eventGson = gson.toJson(event);
-		
-		/* Mask user's password, if one is received */
-		JSONObject obj = new JSONObject(eventGson);
-		if (obj.has("password")) {
-			obj.put("password", "*******");
-			eventGson = obj.toString();
+		if (DEBUG_LOGGING) {
+			logger.log("REQUEST: " + AuthJson.toLogString(request));
 		}
-		
-		username = event.get("username");
+
+		username = request.getUsername();
+		String presentedPassword = request.getPassword();
+
+		/* Unknown usernames, e.g. from credential stuffing, are refused without touching the database */
+		String rejectedBy = rejectUnknownUsername();
+		if (rejectedBy != null) {
+			logger.log("No active user with username " + username + " (" + rejectedBy + ")");
+			METRICS.setRejectedBy(rejectedBy);
+			return invalidUserResponse();
+		}
+
+		/* Repeat logins with the same credentials skip the database and bcrypt */
+		if (username != null && presentedPassword != null) {
+			long lookupStart = System.nanoTime();
+			AuthResponse cachedResponse = AUTH_DECISION_CACHE.get(username, presentedPassword);
+			METRICS.record(AuthMetrics.Phase.CACHE_LOOKUP, lookupStart);
+			if (cachedResponse != null) {
+				logger.log("Cached authentication for " + username);
+				METRICS.setCacheHit(true);
+				METRICS.setOutcome("Success");
+				return cachedResponse;
+			}
+		}
+
+		UserAuthRecord authRecord = loadAuthRecord();
 
 		/*
 		 * Check that
@@ -104,49 +172,207 @@ public class LambdaFunctionHandler implements RequestHandler<Map<String, String>
 		 * 2) The user is active
 		 */
 
-		if (!activeUserExists()) {
+		if (!activeUserExists(authRecord)) {
 			logger.log("No active user with username " + username);
-			data_ret.put("Result", "Failed Authentication");
-			data_ret.put("Reason", "Invalid User");
-			data_ret.put("Username", username);
-			return data_ret;
+			if (!authLookupFailed) {
+				NEGATIVE_AUTH_CACHE.put(username);
+			}
+			return invalidUserResponse();
 		}
 
-		if (event.containsKey("password")) {
-			String password = event.get("password");
-			boolean valid = this.validUsernamePassword(username, password);
+		List<String> publicKeyList = null;
+		if (request.hasPassword()) {
+			boolean valid = this.validUsernamePassword(authRecord, presentedPassword);
 			if (!valid) {
-				data_ret.put("Result", "Failed Authentication");
-				data_ret.put("Reason", "Invalid Password");
-				data_ret.put("Username", username);
 				logger.log("Invalid Password");
-				return data_ret;
+				METRICS.setOutcome("InvalidPassword");
+				return AuthResponse.failure("Invalid Password", username);
 			}
+			rehashIfNeeded(authRecord, presentedPassword);
 		}
 
 		else {
 			/*Case: SFTP and no password.  Search for a matching key pair*/
-			if (event.get("protocol").equals("SFTP")) {
-				List<String> publicKeyList = this.getPublicKeys();
-				data_ret.put("PublicKeys", publicKeyList);
+			if ("SFTP".equals(request.getProtocol())) {
+				long fetchStart = System.nanoTime();
+				publicKeyList = identityStore().getPublicKeys(username);
+				METRICS.record(AuthMetrics.Phase.PUBLIC_KEYS, fetchStart);
 			}
 			
 			/*Case: FTPS and no password.  This is not acceptable*/
-			if (event.get("protocol").equals("FTPS")) {
+			if ("FTPS".equals(request.getProtocol())) {
 				logger.log("User " + username + " login failed: FTPS protocol, no passsword provided");
-				return data_ret;
+				METRICS.setOutcome("MissingPassword");
+				return AuthResponse.empty();
 			}
 			
 		}
 
-		String userMappings = getUserMappings();
+		long policyStart = System.nanoTime();
+		PolicyRenderer.RenderedPolicy rendered = policyRenderer.render(username, authRecord.getDirectoryMappings());
+		METRICS.record(AuthMetrics.Phase.POLICY, policyStart);
+
+		AuthResponse response = AuthResponse.success(TRANSFER_ROLE_ARN, rendered.getPolicy(),
+				rendered.getHomeDirectoryDetails(), publicKeyList);
+		if (DEBUG_LOGGING) {
+			logger.log("RESPONSE: " + AuthJson.toLogString(response));
+		} else {
+			logger.log("Authenticated " + username + " (" + request.getProtocol() + ")");
+		}
+		if (username != null && presentedPassword != null) {
+			AUTH_DECISION_CACHE.put(username, presentedPassword, response);
+		}
+		METRICS.setOutcome("Success");
+		return response;
+	}
+
+	/**
+	 * Gets the execution environment ready for a known login wave, e.g. from a scheduled rule:
+	 * re-reads the SSM parameters, re-signs the RDS token if it is due, validates or re-opens the
+	 * database connection and loads each hot user's record, policy and public keys, so their first
+	 * logins skip the slow paths. Hot users come from the event's warmupUsers, or WARMUP_USERS
+	 * (comma-separated). No auth decision is made. One event warms one environment.
+	 */
+	private AuthResponse warmUp(AuthRequest request, Context context) {
+		logger = context.getLogger();
+		long start = System.nanoTime();
+		if (!primed) {
+			try {
+				prime();
+				METRICS.recordNanos(AuthMetrics.Phase.BCRYPT_CALIBRATION, bcryptCalibrationNanos);
+			} catch (RuntimeException e) {
+				logger.log("Warm-up: priming failed: " + e.getMessage());
+			}
+		}
+
+		long parametersStart = System.nanoTime();
+		try {
+			if (applyParameters(loadParameters())) {
+				logger.log("Warm-up: parameters changed, cached decisions dropped");
+				AUTH_DECISION_CACHE.reset();
+			}
+		} catch (SdkException e) {
+			logger.log("Warm-up: unable to refresh parameters: " + e.getMessage());
+		}
+		METRICS.record(AuthMetrics.Phase.PARAMETERS, parametersStart);
+
+		try {
+			long tokenStart = System.nanoTime();
+			authTokenProvider.refresh();
+			METRICS.record(AuthMetrics.Phase.TOKEN, tokenStart);
+			long connectStart = System.nanoTime();
+			CONNECTION_HOLDER.borrow();
+			METRICS.record(AuthMetrics.Phase.CONNECT, connectStart);
+		} catch (SQLException | SdkException e) {
+			logger.log("Warm-up: unable to connect to the database: " + e.getMessage());
+		}
+
+		/* Re-check the snapshot and rebuild the username filter now rather than on the first login */
+		identityStore().reset();
+		identityStore().mightExist(PRIMING_USERNAME);
+		List<String> users = request.getWarmupUsers() == null ? WARMUP_USERS : request.getWarmupUsers();
+		int warmed = 0;
+		for (String user : users) {
+			try {
+				if (!identityStore().mightExist(user)) {
+					continue;
+				}
+				UserAuthRecord authRecord = identityStore().findUser(user);
+				if (!activeUserExists(authRecord)) {
+					continue;
+				}
+				policyRenderer.render(user, authRecord.getDirectoryMappings());
+				identityStore().getPublicKeys(user);
+				warmed++;
+			} catch (IdentityStoreException | SdkException e) {
+				logger.log("Warm-up: unable to load " + user + ": " + e.getMessage());
+			}
+		}
+		logger.log("Warmed up " + warmed + " of " + users.size() + " users in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+		METRICS.setOutcome("WarmUp");
+		return AuthResponse.empty();
+	}
+
+	private AuthResponse invalidUserResponse() {
+		METRICS.setOutcome("InvalidUser");
+		return AuthResponse.failure("Invalid User", username);
+	}
+
+	/**
+	 * @return what refused the username ("NegativeCache" or "UsernameFilter"), or null if it must be looked up
+	 */
+	private String rejectUnknownUsername() {
+		if (username == null) {
+			return null;
+		}
+		if (NEGATIVE_AUTH_CACHE.isKnownInvalid(username)) {
+			return "NegativeCache";
+		}
+		if (!identityStore().mightExist(username)) {
+			return "UsernameFilter";
+		}
+		return null;
+	}
+
+	private IdentityStore identityStore() {
+		return injectedIdentityStore == null ? identityStore : injectedIdentityStore;
+	}
+
+	/**
+	 * Runs every class path a login touches (TLS, JDBC, bcrypt, JSON, S3) against a
+	 * username that doesn't exist, leaving the database connection open.
+	 * The bcrypt step doubles as the calibration of the target cost.
+	 */
+	private static void prime() {
+		RdsSslSocketFactory.getSslContext().createSSLEngine();
+		primed = true;
+		bcryptCalibrationNanos = PASSWORD_HASHER.calibrate();
+		try {
+			AuthJson.readRequest(new ByteArrayInputStream(
+					("{\"username\":\"" + PRIMING_USERNAME + "\"}").getBytes(StandardCharsets.UTF_8)));
+			AuthJson.writeResponse(AuthResponse.failure("Invalid User", PRIMING_USERNAME), new ByteArrayOutputStream());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		new PolicyRenderer(S3_STORAGE_BUCKET_ARN, S3_KEYPAIR_BUCKET_ARN).render(PRIMING_USERNAME,
+				Collections.singletonList(new DirectoryMapping(0, 0, "/", "/" + PRIMING_USERNAME, true)));
+		/* The snapshot store answers from S3 without touching JDBC, so open the connection directly */
+		try {
+			CONNECTION_HOLDER.borrow();
+		} catch (SQLException | SdkException e) {
+			System.out.println("Priming SQL ERROR: " + e.getMessage());
+		}
+		try {
+			identityStore.findUser(PRIMING_USERNAME);
+		} catch (IdentityStoreException e) {
+			System.out.println("Priming " + e.getMessage());
+		}
+		identityStore.getPublicKeys(PRIMING_USERNAME);
+		publicKeyCache.invalidate(PRIMING_USERNAME);
+	}
+
+	/**
+	 * Open sockets can't be carried across a snapshot.
+	 */
+	private static void releaseForCheckpoint() {
+		CONNECTION_HOLDER.invalidate();
+	}
 
-		data_ret.put("Role", TRANSFER_ROLE_ARN);
-		data_ret.put("HomeDirectoryType", "LOGICAL");
-		data_ret.put("Policy", getPolicy());
-		data_ret.put("HomeDirectoryDetails", userMappings);
-		logger.log("RESPONSE: " + gson.toJson(data_ret));
-		return data_ret;
+	/**
+	 * Re-signs credentials and reconnects after the execution environment is restored from a snapshot.
+	 */
+	private static void restore() {
+		authTokenProvider.invalidate();
+		AUTH_DECISION_CACHE.reset();
+		NEGATIVE_AUTH_CACHE.clear();
+		identityStore.reset();
+		CONNECTION_HOLDER.invalidate();
+		try {
+			CONNECTION_HOLDER.borrow();
+		} catch (SQLException e) {
+			System.out.println("Restore SQL ERROR: " + e.getMessage());
+		}
 	}
 
 	/**
@@ -154,10 +380,15 @@ public class LambdaFunctionHandler implements RequestHandler<Map<String, String>
 	 * Construction of the S3 client is slow, so it's important for it to be static.
 	 */
 	private static void init() {
-		SsmClient ssm = SsmClient.builder()
+		ssm = SsmClient.builder()
 				.region(REGION)
 				.endpointOverride(URI.create(SSM_VPC_ENDPOINT))
 				.build();
+		s3 = S3AsyncClient.builder().region(REGION).build();
+		applyParameters(loadParameters());
+	}
+
+	private static Map<String, String> loadParameters() {
 		String nextToken = null;
 		boolean stop = false;
 		/*
@@ -177,313 +408,179 @@ public class LambdaFunctionHandler implements RequestHandler<Map<String, String>
 			parameters.forEach(p -> parameterMap.put(p.name(), p.value()));
 			stop = (nextToken == null);
 		}
-
-		S3_KEYPAIR_BUCKET_NAME = parameterMap.get("/Applications/FileTransferAdminPortal/S3-Keypair-Bucket-Name");
-		TRANSFER_ROLE_ARN = parameterMap.get("/Applications/FileTransferAdminPortal/TransferS3AccessRole");
-		DB_ENDPOINT = parameterMap.get("/Applications/FileTransferAdminPortal/rds_endpoint");
-		S3_STORAGE_BUCKET_ARN = parameterMap.get("/Applications/FileTransferAdminPortal/S3-Storage-Bucket-ARN");
-		S3_KEYPAIR_BUCKET_ARN = parameterMap.get("/Applications/FileTransferAdminPortal/S3-Keypair-Bucket-ARN");
-		s3 = S3Client.builder().region(REGION).build();
-	}
-
-	private String format(String target) {
-		/* Remove leading backslash */
-		String cleanTarget = target.substring(1);
-		cleanTarget = "\"arn:aws:s3:::" + cleanTarget + "/*\"";
-		return cleanTarget;
-	}
-
-	private String getPermissionBlock(Permission permission, List<String> directories) {
-		String commaSeparatedDirectories = String.join(",", directories);
-		String s = "{\"Sid\":\"" + permission.getSid() + "\",";
-		s += "\"Effect\":\"" + permission.getEffect() + "\",";
-		s += "\"Action\":\"" + permission.getAction() + "\",";
-		s += "\"Resource\":[";
-		s += commaSeparatedDirectories;
-		s += "]}";
-		return s;
+		return parameterMap;
 	}
 
-	private String getPolicy() {
-		String policy = "{";
-		policy += POLICY_HEADER;
-		policy += "[";
-		policy += getDataBucketPermissions();
-		policy += ",";
-		policy += getListBucketPermissions();
-		policy += "]";
-		policy += "}";
-		
-		return policy;
-	}
-
-	private String getListBucketPermissions() {
-		String s = "{\"Sid\":\"ListDataBucket\",";
-		s += "\"Effect\":\"Allow\",";
-		s += "\"Action\":[\"s3:ListBucket\"],";
-		s += "\"Resource\":[\"" + S3_STORAGE_BUCKET_ARN + "\",\"" + S3_KEYPAIR_BUCKET_ARN + "\"]";
-		s += "},";
-		s += "{\"Sid\":\"GetDataObjects\",";
-		s += "\"Effect\":\"Allow\",";
-		s += "\"Action\":[\"s3:GetObject*\"],";
-		s += "\"Resource\":[\"" + S3_STORAGE_BUCKET_ARN + "/*\",\"" + S3_KEYPAIR_BUCKET_ARN + "/" + username + "/*\"]";
-		s += "}";
-		return s;
+	/**
+	 * Applies the parameters, rebuilding only what depends on a changed value, so refreshing
+	 * unchanged parameters keeps every cache and the open connection.
+	 *
+	 * @return true if any parameter changed
+	 */
+	private static boolean applyParameters(Map<String, String> parameterMap) {
+		String keypairBucketName = parameterMap.get("/Applications/FileTransferAdminPortal/S3-Keypair-Bucket-Name");
+		String snapshotBucketName = parameterMap.get("/Applications/FileTransferAdminPortal/S3-Auth-Snapshot-Bucket-Name");
+		String transferRoleArn = parameterMap.get("/Applications/FileTransferAdminPortal/TransferS3AccessRole");
+		String dbEndpoint = parameterMap.get("/Applications/FileTransferAdminPortal/rds_endpoint");
+		String storageBucketArn = parameterMap.get("/Applications/FileTransferAdminPortal/S3-Storage-Bucket-ARN");
+		String keypairBucketArn = parameterMap.get("/Applications/FileTransferAdminPortal/S3-Keypair-Bucket-ARN");
+		boolean changed = !Objects.equals(transferRoleArn, TRANSFER_ROLE_ARN);
+		TRANSFER_ROLE_ARN = transferRoleArn;
+		if (authTokenProvider == null || !Objects.equals(dbEndpoint, DB_ENDPOINT)) {
+			DB_ENDPOINT = dbEndpoint;
+			authTokenProvider = new AuthTokenProvider(DB_ENDPOINT, 3306, "svc_fap", REGION);
+			CONNECTION_HOLDER.invalidate();
+			changed = true;
+		}
+		if (policyRenderer == null || !Objects.equals(storageBucketArn, S3_STORAGE_BUCKET_ARN)
+				|| !Objects.equals(keypairBucketArn, S3_KEYPAIR_BUCKET_ARN)) {
+			S3_STORAGE_BUCKET_ARN = storageBucketArn;
+			S3_KEYPAIR_BUCKET_ARN = keypairBucketArn;
+			policyRenderer = new PolicyRenderer(S3_STORAGE_BUCKET_ARN, S3_KEYPAIR_BUCKET_ARN);
+			changed = true;
+		}
+		if (identityStore == null || !Objects.equals(keypairBucketName, S3_KEYPAIR_BUCKET_NAME)
+				|| !Objects.equals(snapshotBucketName, S3_AUTH_SNAPSHOT_BUCKET_NAME)) {
+			S3_KEYPAIR_BUCKET_NAME = keypairBucketName;
+			S3_AUTH_SNAPSHOT_BUCKET_NAME = snapshotBucketName;
+			publicKeyCache = new PublicKeyCache(s3, S3_KEYPAIR_BUCKET_NAME);
+			identityStore = createIdentityStore(s3);
+			changed = true;
+		}
+		return changed;
 	}
 
-	private String getDataBucketPermissions() {
-		List<String> permissionBlocks = new LinkedList<>();
-		Map<Permission, List<String>> directoryPermissions = new HashMap<>();
-		directoryPermissions.put(
-			Permission.ALLOW_WRITE, directoryMappings.stream().filter(
-				d -> d.isWrite())
-			.map(d -> format(d.getTarget()))
-			.collect(Collectors.toList()));
-		
-		directoryPermissions.put(Permission.ALLOW_DELETE, directoryMappings.stream().filter(d -> d.isWrite())
-				.map(d -> format(d.getTarget())).collect(Collectors.toList()));
-		
-		directoryPermissions.put(Permission.DENY_WRITE, directoryMappings.stream().filter(d -> !d.isWrite())
-				.map(d -> format(d.getTarget())).collect(Collectors.toList()));
-		
-		
-		directoryPermissions.put(Permission.DENY_DELETE, directoryMappings.stream().filter(d -> !d.isWrite())
-				.map(d -> format(d.getTarget())).collect(Collectors.toList()));
-
-		
-		
-		
-		
-		for (Permission permission : directoryPermissions.keySet()) {
-			List<String> directories = directoryPermissions.get(permission);
-			if (directories.size() > 0) {
-				permissionBlocks.add(getPermissionBlock(permission, directories));
+	/**
+	 * IDENTITY_STORE selects where users are looked up:
+	 * "snapshot" (default) uses the portal's published snapshot and falls back to RDS when it is stale,
+	 * "rds" always queries the database, and "memory" loads users from the JSON file in IDENTITY_STORE_FILE.
+	 */
+	private static IdentityStore createIdentityStore(S3AsyncClient s3) {
+		String type = System.getenv("IDENTITY_STORE");
+		type = type == null || type.trim().isEmpty() ? "snapshot" : type.trim().toLowerCase(Locale.ROOT);
+		if (type.equals("memory")) {
+			String file = System.getenv("IDENTITY_STORE_FILE");
+			try {
+				return InMemoryIdentityStore.fromFile(file);
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to load identity store file " + file, e);
 			}
 		}
-
-		String dataBucketPermissions = String.join(",", permissionBlocks);
-		return dataBucketPermissions;
-	}
-
-	private List<String> getPublicKeys() {
-		ListObjectsRequest listObjectsRequest = ListObjectsRequest.builder()
-				.bucket(S3_KEYPAIR_BUCKET_NAME)
-				.prefix(username + "/public-keys")
-				.build();
-		ListObjectsResponse listObjectResponse = s3.listObjects(listObjectsRequest);
-		List<String> keys = listObjectResponse.contents().stream()
-				.filter(obj -> !obj.key().endsWith("/"))
-				.map(obj -> obj.key()).collect(Collectors.toList());
-		List<String> publicKeys = new ArrayList<>();
-		for (String key : keys) {
-			GetObjectRequest getObjectRequest = GetObjectRequest.builder()
-					.bucket(S3_KEYPAIR_BUCKET_NAME)
-					.key(key)
-					.build();
-			ResponseInputStream<GetObjectResponse> inputStream = s3.getObject(getObjectRequest);
-			String text = new BufferedReader(
-					new InputStreamReader(inputStream, StandardCharsets.UTF_8))
-							.lines()
-							.collect(Collectors.joining());
-			publicKeys.add(text);
-
-		}
-		return publicKeys;
+		IdentityStore rds = new RdsIdentityStore(CONNECTION_HOLDER, AUTH_DATA_LOADER, publicKeyCache, METRICS,
+				EnvironmentSettings.getLong("USERNAME_FILTER_REFRESH_SECONDS", 0) * 1000);
+		if (type.equals("rds")) {
+			return rds;
+		}
+		if (!type.equals("snapshot")) {
+			System.out.println("Unknown IDENTITY_STORE " + type + "; using snapshot");
+		}
+		return new SnapshotIdentityStore(AuthSnapshotStore.fromEnvironment(s3, S3_AUTH_SNAPSHOT_BUCKET_NAME), rds, METRICS);
 	}
 
 	/**
-	 * Lambda is extremely fickle about formatting. The string concatenation below
-	 * isn't that graceful.
-	 * Improve on this.
-	 * 
-	 * @return
+	 * @return the auth record, or null if the user doesn't exist or the lookup failed
 	 */
-	private String getUserMappings() {
-		String sql = "SELECT m.id as directoryMappingId, m.userId, m.write, m.entry, m.target ";
-		sql += "FROM directoryMapping m inner join AppUser a on a.id = m.userId ";
-		sql += "WHERE username = ?";
-
-		List<String> mappingItems = new ArrayList<>();
-		try (
-				Connection con = this.getConnection();
-				PreparedStatement ps = con.prepareStatement(sql);) {
-			ps.setString(1, username);
-			try (ResultSet rs = ps.executeQuery()) {
-				while (rs.next()) {
-					String entry = rs.getString("entry");
-					String target = rs.getString("target");
-					String mappingItem = "{\"Entry\":" + " \"" + entry + "\",";
-					mappingItem += " \"Target\":" + " \"" + target + "\"}";
-					mappingItems.add(mappingItem);
-
-					DirectoryMapping dm = new DirectoryMapping(rs.getLong("directoryMappingId"), rs.getLong("userId"),
-							entry, target,
-							rs.getBoolean("write"));
-					directoryMappings.add(dm);
-
-				}
-			}
-		} catch (SQLException e) {
-			logger.log("SQL ERROR: " + e.getMessage());
+	private UserAuthRecord loadAuthRecord() {
+		authLookupFailed = false;
+		try {
+			return identityStore().findUser(username);
+		} catch (IdentityStoreException e) {
+			logger.log(e.getMessage());
+			authLookupFailed = true;
+			return null;
 		}
+	}
 
-		String mappingString = "[" + String.join(",", mappingItems) + "]";
-		return mappingString;
+	private boolean activeUserExists(UserAuthRecord authRecord) {
+		return authRecord != null && authRecord.isEnabled();
 	}
 
-	private boolean activeUserExists() {
-		String sql = "SELECT count(*) as recordCount FROM AppUser WHERE username = ? and enabled = 1;";
-		try (
-				Connection con = getConnection();
-				PreparedStatement ps = con.prepareStatement(sql);) {
-			ps.setString(1, username);
-			try (ResultSet rs = ps.executeQuery()) {
-				rs.next();
-				return rs.getInt("recordCount") > 0;
-			}
+	private boolean validUsernamePassword(UserAuthRecord authRecord, String password) {
+		boolean passwordExpired = authRecord.isPasswordExpired(LocalDateTime.now());
+		long bcryptStart = System.nanoTime();
+		boolean validPassword = checkPassword(password, authRecord.getPasswordHash());
+		METRICS.record(AuthMetrics.Phase.BCRYPT, bcryptStart);
+		METRICS.setBcryptCost(PasswordHasher.cost(authRecord.getPasswordHash()));
+		return validPassword && !passwordExpired;
+	}
 
-		} catch (SQLException e) {
-			logger.log("SQL ERROR: " + e.getMessage());
-			return false;
-		}
+	/**
+	 * Accepts $2a$, $2b$ and $2y$ bcrypt hashes of any cost.
+	 */
+	public static boolean checkPassword(String loginPassword, String hashedPassword) {
+		return PASSWORD_HASHER.verify(loginPassword, hashedPassword);
 	}
 
-	private boolean validUsernamePassword(String username, String password) {
-		LocalDateTime passwordExpiration = null;
-		String sql = "SELECT username, password, passwordExpiration FROM AppUser WHERE username = ?";
-		String correctPassword = null;
-
-		try (
-				Connection con = getConnection();
-				PreparedStatement ps = con.prepareStatement(sql);) {
-			ps.setString(1, username);
-			try (
-					ResultSet rs = ps.executeQuery();) {
-				while (rs.next()) {
-					correctPassword = rs.getString("password");
-					passwordExpiration = rs.getTimestamp("passwordExpiration").toLocalDateTime();
-				}
+	/**
+	 * Moves a hash at another cost to the target cost (BCRYPT_COST) now that the plain password is
+	 * known. This login pays for one extra hash; a failed write is logged and retried next login.
+	 * A hash this environment already tried to replace is skipped, since the snapshot keeps serving
+	 * it after RDS has the new one and the compare-and-set would only fail again.
+	 */
+	private void rehashIfNeeded(UserAuthRecord authRecord, String password) {
+		String currentHash = authRecord.getPasswordHash();
+		if (!PASSWORD_HASHER.needsRehash(currentHash)
+				|| currentHash.equals(REHASHED_FROM.get(authRecord.getUserId()))) {
+			return;
+		}
+		long rehashStart = System.nanoTime();
+		try {
+			if (identityStore().updatePasswordHash(authRecord, currentHash, PASSWORD_HASHER.hash(password))) {
+				logger.log("Rehashed password for " + username + " from cost " + PasswordHasher.cost(currentHash)
+						+ " to " + PASSWORD_HASHER.getTargetCost());
+			} else {
+				logger.log("Password for " + username + " not rehashed: the stored hash changed since it was read"
+						+ " or the store is read-only");
 			}
-
-		} catch (SQLException e) {
-			logger.log("SQL ERROR: " + e.getMessage());
+			REHASHED_FROM.put(authRecord.getUserId(), currentHash);
+		} catch (IdentityStoreException e) {
+			logger.log("Unable to rehash password for " + username + ": " + e.getMessage());
 		}
-
-		boolean passwordExpired = LocalDateTime.now().isAfter(passwordExpiration);
-		boolean validPassword = checkPassword(password, correctPassword);
-		return validPassword && !passwordExpired;
+		METRICS.record(AuthMetrics.Phase.REHASH, rehashStart);
 	}
 
-	public static boolean checkPassword(String loginPassword, String hashedPassword) {
-		boolean valid = false;
-		if (hashedPassword==null || !hashedPassword.startsWith("$2a$")) {
-			return false;
-		}
-		valid = BCrypt.checkpw(loginPassword, hashedPassword);
-		return valid;
+	/**
+	 * Returns the execution environment's shared connection, validated and re-opened if needed.
+	 * The connection is owned by the holder and must not be closed by the caller.
+	 */
+	public Connection getConnection() throws SQLException {
+		return CONNECTION_HOLDER.borrow();
 	}
 
-	
-	public  Connection getConnection() throws SQLException {
+	private static Connection openConnection() throws SQLException {
 		try {
-    		 setSslProperties();
-    		    
 			Class.forName("com.mysql.cj.jdbc.Driver");
-		} catch (IOException e) {
-			e.printStackTrace();
-		} catch(ClassNotFoundException f) {
-				f.printStackTrace();
-		} catch(GeneralSecurityException g) {
-			g.printStackTrace();
-		}
-    	
-        String JDBC_URL = "jdbc:mysql://" + DB_ENDPOINT + ":3306/FileTransferAdminPortal";
-        Connection con = null;
-        try {
-        	con = DriverManager.getConnection(JDBC_URL, setMySqlConnectionProperties());
-        	con.setAutoCommit(true);
-        } catch(SQLException e) {
-        	e.printStackTrace();
-        }
-        return con;
-    }
-	 /**
-	   * Sets the System's SSL properties which specify the key store file, its type and password.
-	   *
-	   * @throws GeneralSecurityException when creating the key in the key store fails
-	   * @throws IOException when creating a temp file or reading a keystore file fails
-	   */
-	  private static void setSslProperties() throws GeneralSecurityException, IOException {
-	    File keyStoreFile = createKeyStoreFile(createCertificate(SSL_CERTIFICATE));
-	    System.setProperty("javax.net.ssl.trustStore", keyStoreFile.getPath());
-	    System.setProperty("javax.net.ssl.trustStoreType", KEY_STORE_TYPE);
-	    System.setProperty("javax.net.ssl.trustStorePassword", DEFAULT_KEY_STORE_PASSWORD);
-	    
-	  }
+		} catch (ClassNotFoundException e) {
+			/* Not recoverable by retrying; the image was built without the driver */
+			throw new IllegalStateException("MySQL JDBC driver is not on the class path", e);
+		}
+		String jdbcUrl = "jdbc:mysql://" + DB_ENDPOINT + ":3306/FileTransferAdminPortal";
+		Connection con = DriverManager.getConnection(jdbcUrl, setMySqlConnectionProperties());
+		con.setAutoCommit(true);
+		return con;
+	}
 
 	  /**
-	   * This method creates the Key Store File needed for the SSL verification <br/>
-	   * during the IAM Database Authentication to the db instance.
-	   *
-	   * @param rootX509Certificate - the SSL certificate to be stored in the KeyStore
-	   * @return the keystore file
-	   * @throws GeneralSecurityException when creating the key in key store fails
-	   * @throws IOException when creating temp file or reading a keystore file fails
-	   */
-	  private static File createKeyStoreFile(X509Certificate rootX509Certificate)
-	      throws GeneralSecurityException, IOException {
-	    File keyStoreFile = File.createTempFile(KEY_STORE_FILE_PREFIX, KEY_STORE_FILE_SUFFIX);
-
-	    try (FileOutputStream fos = new FileOutputStream(keyStoreFile.getPath())) {
-	      KeyStore ks = KeyStore.getInstance(KEY_STORE_TYPE, KEY_STORE_PROVIDER);
-	      ks.load(null);
-	      ks.setCertificateEntry("rootCaCertificate", rootX509Certificate);
-	      ks.store(fos, DEFAULT_KEY_STORE_PASSWORD.toCharArray());
-	    }
-
-	    return keyStoreFile;
-	  }
-	  /**
-	   * Creates the SSL certificate.
-	   *
-	   * @return X509Certificate certificate for SSL connection
-	   * @throws GeneralSecurityException when creating the key in the key store fails
-	   * @throws IOException when creating a temp file or reading a keystore file fails
-	   */
-	  public static X509Certificate createCertificate(String certFile) throws  GeneralSecurityException, IOException {
-	    CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
-	    try (InputStream certInputStream = LambdaFunctionHandler.class.getResourceAsStream("/"+ certFile)) {
-	    	X509Certificate cert = (X509Certificate) certFactory.generateCertificate(certInputStream);
-	    	return cert;
-	    }
-	  }
-	  /**
      * This method sets the mysql connection properties which includes the IAM Database Authentication token
-     * as the password. It also specifies that SSL verification is required.
+     * as the password. It also specifies that SSL verification is required, using the in-memory
+     * RDS trust store held by {@link RdsSslSocketFactory}.
      * @return
      */
     public static Properties setMySqlConnectionProperties() {
         Properties mysqlConnectionProperties = new Properties();
         mysqlConnectionProperties.setProperty("verifyServerCertificate","true");
         mysqlConnectionProperties.setProperty("useSSL", "true");
+        mysqlConnectionProperties.setProperty("socketFactory", RdsSslSocketFactory.class.getName());
         mysqlConnectionProperties.setProperty("user","svc_fap");
         mysqlConnectionProperties.setProperty("password",generateAuthToken());
         return mysqlConnectionProperties;
     }
     
     private static String generateAuthToken() {
-		//init();
-		 GenerateAuthenticationTokenRequest request = GenerateAuthenticationTokenRequest
-				 .builder()
-				 .hostname(DB_ENDPOINT)
-				 .port(3306)
-				 .username("svc_fap")
-				 .credentialsProvider(DefaultCredentialsProvider.create())
-				 .region(REGION)
-				 .build();
-		 	String token = RdsUtilities.builder().build().generateAuthenticationToken(request);
-		 	return token;
-	
-	    }
+		long tokenStart = System.nanoTime();
+		String token = authTokenProvider.getToken();
+		METRICS.record(AuthMetrics.Phase.TOKEN, tokenStart);
+		return token;
+	}
 	
 }
@@ -0,0 +1,82 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Short-lived, size-bounded LRU set of usernames that were looked up and found to be
+ * missing or disabled. Repeated attempts against the same bogus username, typical of
+ * credential stuffing, are rejected without a database query until the entry expires.
+ * Keep the TTL short: a user created or re-enabled in the portal is refused until then.
+ */
+public class NegativeAuthCache {
+
+	private static final long DEFAULT_TTL_SECONDS = 30;
+	private static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	private final long ttlMillis;
+	private final int maxEntries;
+	private final LinkedHashMap<String, Long> expiresAtMillis;
+
+	public NegativeAuthCache(long ttlMillis, int maxEntries) {
+		this.ttlMillis = ttlMillis;
+		this.maxEntries = maxEntries;
+		this.expiresAtMillis = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return size() > NegativeAuthCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Builds a cache from the NEGATIVE_CACHE_TTL_SECONDS and NEGATIVE_CACHE_MAX_ENTRIES environment variables.
+	 * A TTL of 0 disables caching.
+	 */
+	public static NegativeAuthCache fromEnvironment() {
+		long ttlSeconds = EnvironmentSettings.getLong("NEGATIVE_CACHE_TTL_SECONDS", DEFAULT_TTL_SECONDS);
+		int maxEntries = (int) EnvironmentSettings.getLong("NEGATIVE_CACHE_MAX_ENTRIES", DEFAULT_MAX_ENTRIES);
+		return new NegativeAuthCache(ttlSeconds * 1000, maxEntries);
+	}
+
+	public boolean isEnabled() {
+		return ttlMillis > 0 && maxEntries > 0;
+	}
+
+	/**
+	 * @return true if the username was recently found to be missing or disabled
+	 */
+	public synchronized boolean isKnownInvalid(String username) {
+		if (!isEnabled()) {
+			return false;
+		}
+		Long expiresAt = expiresAtMillis.get(username);
+		if (expiresAt == null) {
+			return false;
+		}
+		if (System.currentTimeMillis() >= expiresAt) {
+			expiresAtMillis.remove(username);
+			return false;
+		}
+		return true;
+	}
+
+	public synchronized void put(String username) {
+		if (!isEnabled()) {
+			return;
+		}
+		expiresAtMillis.put(username, System.currentTimeMillis() + ttlMillis);
+	}
+
+	public synchronized void clear() {
+		expiresAtMillis.clear();
+	}
+
+	public synchronized int size() {
+		return expiresAtMillis.size();
+	}
+}
@@ -0,0 +1,109 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+/**
+ * Verifies and creates bcrypt password hashes at a target cost.
+ * Hashes with the {@code $2a$}, {@code $2b$} and {@code $2y$} revisions are all accepted. jBCrypt
+ * only parses {@code $2a$}, but it has neither the sign-extension bug {@code $2y$} marks nor the
+ * length wrap-around {@code $2b$} marks, so for it the three revisions compute the same hash.
+ * A hash whose cost differs from the target is reported by {@link #needsRehash(String)} so it can
+ * be replaced after the next successful login; new hashes are written as {@code $2a$}, which the
+ * portal also reads.
+ */
+public class PasswordHasher {
+
+	public static final int DEFAULT_COST = 12;
+	/* jBCrypt accepts costs from 4 to 30; anything above 16 is far beyond a Lambda login budget */
+	private static final int MIN_COST = 4;
+	private static final int MAX_COST = 16;
+
+	private final int targetCost;
+	private final boolean rehashEnabled;
+
+	public PasswordHasher(int targetCost, boolean rehashEnabled) {
+		if (targetCost < MIN_COST || targetCost > MAX_COST) {
+			throw new IllegalArgumentException("bcrypt cost must be between " + MIN_COST + " and " + MAX_COST);
+		}
+		this.targetCost = targetCost;
+		this.rehashEnabled = rehashEnabled;
+	}
+
+	/**
+	 * Builds a hasher from the BCRYPT_COST (default 12) and BCRYPT_REHASH (default true)
+	 * environment variables. A cost outside 4..16 is logged and clamped rather than failing init,
+	 * which would refuse every login.
+	 */
+	public static PasswordHasher fromEnvironment() {
+		long cost = EnvironmentSettings.getLong("BCRYPT_COST", DEFAULT_COST, MIN_COST, MAX_COST);
+		String rehash = System.getenv("BCRYPT_REHASH");
+		return new PasswordHasher((int) cost,
+				rehash == null || !"false".equalsIgnoreCase(rehash.trim()));
+	}
+
+	public int getTargetCost() {
+		return targetCost;
+	}
+
+	/**
+	 * @return true if the password matches the hash; false for a missing or unsupported hash
+	 */
+	public boolean verify(String password, String hash) {
+		if (password == null || cost(hash) < 0) {
+			return false;
+		}
+		return BCrypt.checkpw(password, "$2a$" + hash.substring(4));
+	}
+
+	/**
+	 * @return true if rehashing is enabled and the hash is a supported bcrypt hash at another cost
+	 */
+	public boolean needsRehash(String hash) {
+		int cost = cost(hash);
+		return rehashEnabled && cost >= 0 && cost != targetCost;
+	}
+
+	public String hash(String password) {
+		return BCrypt.hashpw(password, BCrypt.gensalt(targetCost));
+	}
+
+	/**
+	 * Times one hash at the target cost, after a cheap hash to load and JIT the bcrypt code.
+	 * Each cost step doubles the time, so this is the CPU a password login spends in bcrypt at
+	 * the current memory size.
+	 *
+	 * @return nanoseconds for one hash at the target cost
+	 */
+	public long calibrate() {
+		BCrypt.hashpw("calibration", BCrypt.gensalt(MIN_COST));
+		long start = System.nanoTime();
+		BCrypt.hashpw("calibration", BCrypt.gensalt(targetCost));
+		long nanos = System.nanoTime() - start;
+		System.out.println("bcrypt cost " + targetCost + " takes " + nanos / 1000000 + " ms per login");
+		return nanos;
+	}
+
+	/**
+	 * @return the cost of a {@code $2a$}, {@code $2b$} or {@code $2y$} hash, or -1 for anything else,
+	 *         including costs jBCrypt can't compute
+	 */
+	public static int cost(String hash) {
+		if (hash == null || hash.length() != 60 || hash.charAt(0) != '$' || hash.charAt(1) != '2'
+				|| hash.charAt(3) != '$' || hash.charAt(6) != '$') {
+			return -1;
+		}
+		char revision = hash.charAt(2);
+		if (revision != 'a' && revision != 'b' && revision != 'y') {
+			return -1;
+		}
+		char tens = hash.charAt(4);
+		char units = hash.charAt(5);
+		if (tens < '0' || tens > '3' || units < '0' || units > '9') {
+			return -1;
+		}
+		int cost = (tens - '0') * 10 + (units - '0');
+		return cost < MIN_COST || cost > 30 ? -1 : cost;
+	}
+}
@@ -0,0 +1,195 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Renders the IAM session policy and HomeDirectoryDetails returned to Transfer Family.
+ * JSON is written with a streaming writer so every entry and target is escaped, and the
+ * rendered documents are cached per user and reused while the user's mappings are unchanged.
+ */
+public class PolicyRenderer {
+
+	private static final String POLICY_VERSION = "2012-10-17";
+	private static final int DEFAULT_MAX_USERS = 1000;
+
+	private final String storageBucketArn;
+	private final String keypairBucketArn;
+	private final StringWriter buffer = new StringWriter(1024);
+	private final Map<String, CachedPolicy> cache;
+
+	/**
+	 * The policy and HomeDirectoryDetails for one user, both as JSON strings.
+	 */
+	public static class RenderedPolicy {
+		private final String policy;
+		private final String homeDirectoryDetails;
+
+		private RenderedPolicy(String policy, String homeDirectoryDetails) {
+			this.policy = policy;
+			this.homeDirectoryDetails = homeDirectoryDetails;
+		}
+
+		public String getPolicy() {
+			return policy;
+		}
+
+		public String getHomeDirectoryDetails() {
+			return homeDirectoryDetails;
+		}
+	}
+
+	private static class CachedPolicy {
+		private final String fingerprint;
+		private final RenderedPolicy rendered;
+
+		private CachedPolicy(String fingerprint, RenderedPolicy rendered) {
+			this.fingerprint = fingerprint;
+			this.rendered = rendered;
+		}
+	}
+
+	public PolicyRenderer(String storageBucketArn, String keypairBucketArn) {
+		this(storageBucketArn, keypairBucketArn, DEFAULT_MAX_USERS);
+	}
+
+	public PolicyRenderer(String storageBucketArn, String keypairBucketArn, int maxUsers) {
+		this.storageBucketArn = storageBucketArn;
+		this.keypairBucketArn = keypairBucketArn;
+		this.cache = new LinkedHashMap<String, CachedPolicy>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedPolicy> eldest) {
+				return size() > maxUsers;
+			}
+		};
+	}
+
+	/**
+	 * Returns the user's rendered policy, reusing the cached copy when the mappings match.
+	 */
+	public synchronized RenderedPolicy render(String username, List<DirectoryMapping> directoryMappings) {
+		String fingerprint = fingerprint(directoryMappings);
+		CachedPolicy cached = cache.get(username);
+		if (cached != null && cached.fingerprint.equals(fingerprint)) {
+			return cached.rendered;
+		}
+		RenderedPolicy rendered = new RenderedPolicy(renderPolicy(username, directoryMappings),
+				renderHomeDirectoryDetails(directoryMappings));
+		cache.put(username, new CachedPolicy(fingerprint, rendered));
+		return rendered;
+	}
+
+	private String renderPolicy(String username, List<DirectoryMapping> directoryMappings) {
+		List<String> writableTargets = new ArrayList<>();
+		List<String> readOnlyTargets = new ArrayList<>();
+		for (DirectoryMapping dm : directoryMappings) {
+			(dm.isWrite() ? writableTargets : readOnlyTargets).add(toObjectArn(dm.getTarget()));
+		}
+
+		JsonWriter json = newWriter();
+		try {
+			json.beginObject();
+			json.name("Version").value(POLICY_VERSION);
+			json.name("Statement").beginArray();
+			writePermission(json, Permission.ALLOW_WRITE, writableTargets);
+			writePermission(json, Permission.ALLOW_DELETE, writableTargets);
+			writePermission(json, Permission.DENY_WRITE, readOnlyTargets);
+			writePermission(json, Permission.DENY_DELETE, readOnlyTargets);
+
+			json.beginObject();
+			json.name("Sid").value("ListDataBucket");
+			json.name("Effect").value("Allow");
+			json.name("Action").beginArray().value("s3:ListBucket").endArray();
+			json.name("Resource").beginArray().value(storageBucketArn).value(keypairBucketArn).endArray();
+			json.endObject();
+
+			json.beginObject();
+			json.name("Sid").value("GetDataObjects");
+			json.name("Effect").value("Allow");
+			json.name("Action").beginArray().value("s3:GetObject*").endArray();
+			json.name("Resource").beginArray()
+					.value(storageBucketArn + "/*")
+					.value(keypairBucketArn + "/" + username + "/*")
+					.endArray();
+			json.endObject();
+
+			json.endArray();
+			json.endObject();
+			json.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return buffer.toString();
+	}
+
+	private static void writePermission(JsonWriter json, Permission permission, List<String> resources)
+			throws IOException {
+		if (resources.isEmpty()) {
+			return;
+		}
+		json.beginObject();
+		json.name("Sid").value(permission.getSid());
+		json.name("Effect").value(permission.getEffect());
+		json.name("Action").value(permission.getAction());
+		json.name("Resource").beginArray();
+		for (String resource : resources) {
+			json.value(resource);
+		}
+		json.endArray();
+		json.endObject();
+	}
+
+	private String renderHomeDirectoryDetails(List<DirectoryMapping> directoryMappings) {
+		JsonWriter json = newWriter();
+		try {
+			json.beginArray();
+			for (DirectoryMapping dm : directoryMappings) {
+				json.beginObject();
+				json.name("Entry").value(dm.getEntry());
+				json.name("Target").value(dm.getTarget());
+				json.endObject();
+			}
+			json.endArray();
+			json.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * Resets the shared buffer and returns a writer over it.
+	 */
+	private JsonWriter newWriter() {
+		buffer.getBuffer().setLength(0);
+		return new JsonWriter(buffer);
+	}
+
+	/**
+	 * Targets are stored as "/bucket/prefix"; the leading slash is dropped to build the ARN.
+	 */
+	private static String toObjectArn(String target) {
+		return "arn:aws:s3:::" + target.substring(1) + "/*";
+	}
+
+	private static String fingerprint(List<DirectoryMapping> directoryMappings) {
+		StringBuilder sb = new StringBuilder();
+		for (DirectoryMapping dm : directoryMappings) {
+			sb.append(dm.getEntry()).append('\0')
+					.append(dm.getTarget()).append('\0')
+					.append(dm.isWrite() ? '1' : '0').append('\0');
+		}
+		return sb.toString();
+	}
+}
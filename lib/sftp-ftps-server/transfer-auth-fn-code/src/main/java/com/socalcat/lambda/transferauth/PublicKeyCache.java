@@ -0,0 +1,152 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+/**
+ * Retrieves a user's SFTP public keys from the keypair bucket.
+ * Each login revalidates with a single list call; only objects whose ETag changed since
+ * the last login are downloaded, and those downloads run concurrently.
+ */
+public class PublicKeyCache {
+
+	private static final int DEFAULT_MAX_USERS = 1000;
+
+	private final S3AsyncClient s3;
+	private final String bucketName;
+	private final Map<String, Map<String, CachedKey>> keysByUser;
+
+	private static class CachedKey {
+		private final String eTag;
+		private final String text;
+
+		private CachedKey(String eTag, String text) {
+			this.eTag = eTag;
+			this.text = text;
+		}
+	}
+
+	public PublicKeyCache(S3AsyncClient s3, String bucketName) {
+		this(s3, bucketName, DEFAULT_MAX_USERS);
+	}
+
+	public PublicKeyCache(S3AsyncClient s3, String bucketName, int maxUsers) {
+		this.s3 = s3;
+		this.bucketName = bucketName;
+		this.keysByUser = new LinkedHashMap<String, Map<String, CachedKey>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Map<String, CachedKey>> eldest) {
+				return size() > maxUsers;
+			}
+		};
+	}
+
+	/**
+	 * @param username the user whose keys are under {@code <username>/public-keys}
+	 * @return the text of every public key, in key order
+	 */
+	public List<String> getPublicKeys(String username) {
+		List<S3Object> objects = listPublicKeyObjects(username);
+		Map<String, CachedKey> cached;
+		synchronized (keysByUser) {
+			cached = keysByUser.get(username);
+		}
+
+		Map<String, CompletableFuture<CachedKey>> lookups = new LinkedHashMap<>();
+		for (S3Object obj : objects) {
+			CachedKey hit = cached == null ? null : cached.get(obj.key());
+			if (hit != null && hit.eTag.equals(obj.eTag())) {
+				lookups.put(obj.key(), CompletableFuture.completedFuture(hit));
+			} else {
+				lookups.put(obj.key(), fetch(obj));
+			}
+		}
+
+		Map<String, CachedKey> current = new HashMap<>();
+		List<String> publicKeys = new ArrayList<>();
+		for (Map.Entry<String, CompletableFuture<CachedKey>> lookup : lookups.entrySet()) {
+			CachedKey key = join(lookup.getValue());
+			current.put(lookup.getKey(), key);
+			publicKeys.add(key.text);
+		}
+
+		synchronized (keysByUser) {
+			keysByUser.put(username, current);
+		}
+		return publicKeys;
+	}
+
+	/**
+	 * Drops every cached key for the given user.
+	 */
+	public void invalidate(String username) {
+		synchronized (keysByUser) {
+			keysByUser.remove(username);
+		}
+	}
+
+	private List<S3Object> listPublicKeyObjects(String username) {
+		List<S3Object> objects = new ArrayList<>();
+		String continuationToken = null;
+		do {
+			ListObjectsV2Request request = ListObjectsV2Request.builder()
+					.bucket(bucketName)
+					.prefix(username + "/public-keys")
+					.continuationToken(continuationToken)
+					.build();
+			ListObjectsV2Response response = join(s3.listObjectsV2(request));
+			response.contents().stream()
+					.filter(obj -> !obj.key().endsWith("/"))
+					.forEach(objects::add);
+			continuationToken = response.isTruncated() ? response.nextContinuationToken() : null;
+		} while (continuationToken != null);
+		return objects;
+	}
+
+	private CompletableFuture<CachedKey> fetch(S3Object obj) {
+		GetObjectRequest request = GetObjectRequest.builder()
+				.bucket(bucketName)
+				.key(obj.key())
+				.build();
+		return s3.getObject(request, AsyncResponseTransformer.toBytes())
+				.thenApply(bytes -> new CachedKey(obj.eTag(), toKeyText(bytes.asString(StandardCharsets.UTF_8))));
+	}
+
+	/**
+	 * Waits for an S3 call, rethrowing SDK exceptions as the synchronous client would.
+	 */
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Public keys are returned as a single line, the same as reading them line by line and joining.
+	 */
+	private static String toKeyText(String contents) {
+		return contents.replace("\r", "").replace("\n", "");
+	}
+}
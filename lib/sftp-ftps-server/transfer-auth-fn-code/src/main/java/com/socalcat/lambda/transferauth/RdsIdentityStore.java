@@ -0,0 +1,103 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Looks users up in the portal's RDS database with {@link AuthDataLoader} and reads public keys
+ * from the keypair bucket through {@link PublicKeyCache}.
+ * Optionally keeps a {@link UsernameBloomFilter} of enabled usernames, rebuilt from AppUser once it
+ * is older than the refresh interval, so unknown usernames are refused without a query.
+ */
+public class RdsIdentityStore implements IdentityStore {
+
+	private final ConnectionHolder connectionHolder;
+	private final AuthDataLoader authDataLoader;
+	private final PublicKeyCache publicKeyCache;
+	private final AuthMetrics metrics;
+	private final long usernameFilterRefreshMillis;
+	private UsernameBloomFilter usernameFilter;
+	private long usernameFilterBuiltAtMillis;
+
+	/**
+	 * @param usernameFilterRefreshMillis 0 disables the username filter
+	 */
+	public RdsIdentityStore(ConnectionHolder connectionHolder, AuthDataLoader authDataLoader,
+			PublicKeyCache publicKeyCache, AuthMetrics metrics, long usernameFilterRefreshMillis) {
+		this.connectionHolder = connectionHolder;
+		this.authDataLoader = authDataLoader;
+		this.publicKeyCache = publicKeyCache;
+		this.metrics = metrics;
+		this.usernameFilterRefreshMillis = usernameFilterRefreshMillis;
+	}
+
+	/**
+	 * Fetches the user's status, password hash, expiration and mappings in one round-trip.
+	 */
+	@Override
+	public UserAuthRecord findUser(String username) throws IdentityStoreException {
+		metrics.setSource("Database");
+		try {
+			long connectStart = System.nanoTime();
+			Connection con = connectionHolder.borrow();
+			metrics.record(AuthMetrics.Phase.CONNECT, connectStart);
+			long queryStart = System.nanoTime();
+			UserAuthRecord authRecord = authDataLoader.load(con, username);
+			metrics.record(AuthMetrics.Phase.QUERY, queryStart);
+			return authRecord;
+		} catch (SQLException e) {
+			connectionHolder.invalidate();
+			throw new IdentityStoreException("SQL ERROR: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public List<String> getPublicKeys(String username) {
+		return publicKeyCache.getPublicKeys(username);
+	}
+
+	@Override
+	public boolean updatePasswordHash(UserAuthRecord authRecord, String currentHash, String newHash)
+			throws IdentityStoreException {
+		try {
+			return authDataLoader.updatePasswordHash(connectionHolder.borrow(), authRecord.getUserId(),
+					currentHash, newHash);
+		} catch (SQLException e) {
+			connectionHolder.invalidate();
+			throw new IdentityStoreException("SQL ERROR: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * A user added in the portal is refused until the next filter rebuild. If a rebuild fails the
+	 * previous filter is kept; without one, every username is looked up.
+	 */
+	@Override
+	public synchronized boolean mightExist(String username) {
+		if (usernameFilterRefreshMillis <= 0) {
+			return true;
+		}
+		long now = System.currentTimeMillis();
+		if (usernameFilter == null || now - usernameFilterBuiltAtMillis >= usernameFilterRefreshMillis) {
+			long refreshStart = System.nanoTime();
+			try {
+				usernameFilter = UsernameBloomFilter.of(authDataLoader.loadEnabledUsernames(connectionHolder.borrow()));
+				usernameFilterBuiltAtMillis = now;
+				System.out.println("Rebuilt username filter with " + usernameFilter.size() + " users");
+			} catch (SQLException e) {
+				System.out.println("Username filter SQL ERROR: " + e.getMessage());
+				connectionHolder.invalidate();
+			}
+			metrics.record(AuthMetrics.Phase.USERNAME_FILTER, refreshStart);
+		}
+		return usernameFilter == null || usernameFilter.mightContain(username);
+	}
+
+	@Override
+	public synchronized void reset() {
+		usernameFilterBuiltAtMillis = 0;
+	}
+}
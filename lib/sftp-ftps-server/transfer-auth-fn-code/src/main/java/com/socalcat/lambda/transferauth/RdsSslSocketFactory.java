@@ -0,0 +1,103 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+import com.mysql.cj.log.Log;
+import com.mysql.cj.protocol.ServerSession;
+import com.mysql.cj.protocol.SocketConnection;
+import com.mysql.cj.protocol.StandardSocketFactory;
+
+/**
+ * MySQL socket factory that performs the TLS handshake with an {@link SSLContext} trusting
+ * only the bundled RDS root certificate.
+ * The certificate is parsed and the in-memory trust store built once per execution environment,
+ * so connections don't write a keystore to /tmp or touch the global javax.net.ssl properties.
+ * Enable it with the driver's "socketFactory" connection property.
+ */
+public class RdsSslSocketFactory extends StandardSocketFactory {
+
+	public static final String SSL_CERTIFICATE = "rds-ca-2019-root.pem";
+	private static final String[] TLS_PROTOCOLS = { "TLSv1.3", "TLSv1.2" };
+	private static final SSLContext SSL_CONTEXT = createSslContext();
+
+	@Override
+	public <T extends Closeable> T performTlsHandshake(SocketConnection socketConnection,
+			ServerSession serverSession) throws IOException {
+		return performTlsHandshake(socketConnection, serverSession, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T extends Closeable> T performTlsHandshake(SocketConnection socketConnection,
+			ServerSession serverSession, Log log) throws IOException {
+		SSLSocket socket = (SSLSocket) SSL_CONTEXT.getSocketFactory().createSocket(rawSocket, host, port, true);
+		socket.setEnabledProtocols(getEnabledProtocols(socket));
+		socket.startHandshake();
+		sslSocket = socket;
+		return (T) sslSocket;
+	}
+
+	/**
+	 * Forces the certificate and trust store to be loaded, e.g. while priming a new
+	 * execution environment.
+	 */
+	public static SSLContext getSslContext() {
+		return SSL_CONTEXT;
+	}
+
+	private static String[] getEnabledProtocols(SSLSocket socket) {
+		List<String> supported = Arrays.asList(socket.getSupportedProtocols());
+		List<String> enabled = new ArrayList<>();
+		for (String protocol : TLS_PROTOCOLS) {
+			if (supported.contains(protocol)) {
+				enabled.add(protocol);
+			}
+		}
+		return enabled.toArray(new String[0]);
+	}
+
+	private static SSLContext createSslContext() {
+		try {
+			KeyStore ks = KeyStore.getInstance(KeyStore.getDefaultType());
+			ks.load(null);
+			ks.setCertificateEntry("rootCaCertificate", createCertificate(SSL_CERTIFICATE));
+			TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+			tmf.init(ks);
+			SSLContext sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(null, tmf.getTrustManagers(), null);
+			return sslContext;
+		} catch (GeneralSecurityException | IOException e) {
+			throw new IllegalStateException("Unable to build RDS trust store from " + SSL_CERTIFICATE, e);
+		}
+	}
+
+	/**
+	 * Creates the SSL certificate.
+	 *
+	 * @return X509Certificate certificate for SSL connection
+	 * @throws GeneralSecurityException when the certificate can't be parsed
+	 * @throws IOException when the certificate resource can't be read
+	 */
+	public static X509Certificate createCertificate(String certFile) throws GeneralSecurityException, IOException {
+		CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
+		try (InputStream certInputStream = RdsSslSocketFactory.class.getResourceAsStream("/" + certFile)) {
+			X509Certificate cert = (X509Certificate) certFactory.generateCertificate(certInputStream);
+			return cert;
+		}
+	}
+}
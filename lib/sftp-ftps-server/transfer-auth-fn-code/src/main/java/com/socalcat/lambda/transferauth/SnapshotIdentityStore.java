@@ -0,0 +1,69 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.util.List;
+
+/**
+ * Serves lookups from the portal's published {@link AuthSnapshot} while it is fresh, and from
+ * the fallback store (normally RDS) when there is no snapshot or it has gone stale.
+ */
+public class SnapshotIdentityStore implements IdentityStore {
+
+	private final AuthSnapshotStore snapshotStore;
+	private final IdentityStore fallback;
+	private final AuthMetrics metrics;
+
+	public SnapshotIdentityStore(AuthSnapshotStore snapshotStore, IdentityStore fallback, AuthMetrics metrics) {
+		this.snapshotStore = snapshotStore;
+		this.fallback = fallback;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public UserAuthRecord findUser(String username) throws IdentityStoreException {
+		AuthSnapshot snapshot = currentSnapshot();
+		if (snapshot == null) {
+			return fallback.findUser(username);
+		}
+		metrics.setSource("Snapshot");
+		return snapshot.find(username);
+	}
+
+	@Override
+	public List<String> getPublicKeys(String username) {
+		AuthSnapshot snapshot = currentSnapshot();
+		return snapshot == null ? fallback.getPublicKeys(username) : snapshot.getPublicKeys(username);
+	}
+
+	/**
+	 * The snapshot is read-only, so the hash is written to the fallback store; the snapshot keeps
+	 * the old hash until the portal next publishes.
+	 */
+	@Override
+	public boolean updatePasswordHash(UserAuthRecord authRecord, String currentHash, String newHash)
+			throws IdentityStoreException {
+		return fallback.updatePasswordHash(authRecord, currentHash, newHash);
+	}
+
+	/**
+	 * A fresh snapshot makes the fallback's pre-check redundant: the lookup is already a map get.
+	 */
+	@Override
+	public boolean mightExist(String username) {
+		return currentSnapshot() != null || fallback.mightExist(username);
+	}
+
+	@Override
+	public void reset() {
+		snapshotStore.invalidate();
+		fallback.reset();
+	}
+
+	private AuthSnapshot currentSnapshot() {
+		long snapshotStart = System.nanoTime();
+		AuthSnapshot snapshot = snapshotStore.current();
+		metrics.record(AuthMetrics.Phase.SNAPSHOT, snapshotStart);
+		return snapshot;
+	}
+}
@@ -0,0 +1,66 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything the handler needs to make an authentication decision for one user,
+ * loaded in a single round-trip by {@link AuthDataLoader}.
+ */
+public class UserAuthRecord {
+
+	private final long userId;
+	private final String username;
+	private final boolean enabled;
+	private final String passwordHash;
+	/**
+	 * May be null when no expiration was ever set; such passwords are treated as expired.
+	 */
+	private final LocalDateTime passwordExpiration;
+	private final List<DirectoryMapping> directoryMappings = new ArrayList<>();
+
+	public UserAuthRecord(long userId, String username, boolean enabled, String passwordHash,
+			LocalDateTime passwordExpiration) {
+		this.userId = userId;
+		this.username = username;
+		this.enabled = enabled;
+		this.passwordHash = passwordHash;
+		this.passwordExpiration = passwordExpiration;
+	}
+
+	public long getUserId() {
+		return userId;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public String getPasswordHash() {
+		return passwordHash;
+	}
+
+	public LocalDateTime getPasswordExpiration() {
+		return passwordExpiration;
+	}
+
+	public boolean isPasswordExpired(LocalDateTime now) {
+		return passwordExpiration == null || now.isAfter(passwordExpiration);
+	}
+
+	public List<DirectoryMapping> getDirectoryMappings() {
+		return directoryMappings;
+	}
+
+	public void addDirectoryMapping(DirectoryMapping directoryMapping) {
+		directoryMappings.add(directoryMapping);
+	}
+
+}
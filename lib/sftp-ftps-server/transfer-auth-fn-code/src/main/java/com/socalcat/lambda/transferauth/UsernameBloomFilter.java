@@ -0,0 +1,100 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Immutable Bloom filter over the enabled usernames in AppUser.
+ * A negative answer means the username definitely isn't an enabled user, so the login can be
+ * refused without a database query; a positive answer may be a false positive and still needs
+ * the query.
+ * Usernames are lower-cased before hashing because MySQL compares them case-insensitively.
+ */
+public class UsernameBloomFilter {
+
+	private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+	private final long[] bits;
+	private final int bitCount;
+	private final int hashCount;
+	private final int size;
+
+	private UsernameBloomFilter(int bitCount, int hashCount, int size) {
+		this.bits = new long[(bitCount + 63) / 64];
+		this.bitCount = bitCount;
+		this.hashCount = hashCount;
+		this.size = size;
+	}
+
+	/**
+	 * Builds a filter sized for the given usernames at a 1% false positive rate.
+	 */
+	public static UsernameBloomFilter of(Collection<String> usernames) {
+		return of(usernames, DEFAULT_FALSE_POSITIVE_RATE);
+	}
+
+	public static UsernameBloomFilter of(Collection<String> usernames, double falsePositiveRate) {
+		int n = Math.max(1, usernames.size());
+		int bitCount = (int) Math.max(64, Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+		int hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+		UsernameBloomFilter filter = new UsernameBloomFilter(bitCount, hashCount, usernames.size());
+		for (String username : usernames) {
+			filter.add(username);
+		}
+		return filter;
+	}
+
+	/**
+	 * @return false if the username is certainly not in the filter
+	 */
+	public boolean mightContain(String username) {
+		long hash = hash(username);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashCount; i++) {
+			int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+			if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of usernames the filter was built from
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void add(String username) {
+		long hash = hash(username);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashCount; i++) {
+			int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+			bits[bit >>> 6] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * 64-bit FNV-1a over the lower-cased UTF-8 bytes, finished with the MurmurHash3 mixer so
+	 * both halves are usable for double hashing.
+	 */
+	private static long hash(String username) {
+		long h = 0xcbf29ce484222325L;
+		for (byte b : username.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8)) {
+			h ^= b & 0xff;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
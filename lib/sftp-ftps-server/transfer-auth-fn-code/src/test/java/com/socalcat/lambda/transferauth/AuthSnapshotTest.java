@@ -0,0 +1,163 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+package com.socalcat.lambda.transferauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link AuthSnapshot} decodes the layout the portal's AuthSnapshotWriter encodes.
+ * {@link #GOLDEN} is what AuthSnapshotWriterTest in the web app expects the writer to produce, so
+ * a change to either side that breaks the other fails one of the two tests.
+ */
+public class AuthSnapshotTest {
+
+	private static final long GENERATED_AT = 1700000000000L;
+	/* Keep in step with AuthSnapshotWriterTest in the web app */
+	private static final String GOLDEN = "4654415300010000018bcfe568000000000200000000000000070005416c696365001d243261243132246162"
+			+ "636465666768696a6b6c6d6e6f707172737475750000000070dd552500000002000000000000000b00012f00"
+			+ "0d2f6275636b65742f616c69636501000000000000000c00072f736861726564000e2f6275636b65742f7368"
+			+ "617265640000000001001c7373682d7273612041414141423320616c696365406578616d706c650000000000"
+			+ "0000080003626f62000080000000000000000000000000000000ee23fbe5";
+
+	@Test
+	public void readsWhatThePortalWrites() throws IOException {
+		AuthSnapshot snapshot = AuthSnapshot.read(hex(GOLDEN));
+		assertEquals(GENERATED_AT, snapshot.getGeneratedAtMillis());
+		assertEquals(2, snapshot.size());
+
+		UserAuthRecord alice = snapshot.find("alice");
+		assertEquals(7, alice.getUserId());
+		assertEquals("Alice", alice.getUsername());
+		assertTrue(alice.isEnabled());
+		assertEquals("$2a$12$abcdefghijklmnopqrstuu", alice.getPasswordHash());
+		assertEquals(LocalDateTime.of(2030, 1, 2, 3, 4, 5), alice.getPasswordExpiration());
+		assertEquals(2, alice.getDirectoryMappings().size());
+		DirectoryMapping root = alice.getDirectoryMappings().get(0);
+		assertEquals(11, root.getDirectoryMappingId());
+		assertEquals(7, root.getUserId());
+		assertEquals("/", root.getEntry());
+		assertEquals("/bucket/alice", root.getTarget());
+		assertTrue(root.isWrite());
+		DirectoryMapping shared = alice.getDirectoryMappings().get(1);
+		assertEquals(12, shared.getDirectoryMappingId());
+		assertEquals("/shared", shared.getEntry());
+		assertEquals("/bucket/shared", shared.getTarget());
+		assertFalse(shared.isWrite());
+		assertEquals(Collections.singletonList("ssh-rsa AAAAB3 alice@example"), snapshot.getPublicKeys("ALICE"));
+
+		UserAuthRecord bob = snapshot.find("bob");
+		assertEquals(8, bob.getUserId());
+		assertNull(bob.getPasswordHash());
+		assertNull(bob.getPasswordExpiration());
+		assertTrue(bob.getDirectoryMappings().isEmpty());
+		assertTrue(snapshot.getPublicKeys("bob").isEmpty());
+
+		assertNull(snapshot.find("carol"));
+	}
+
+	@Test
+	public void roundTripsEveryField() throws IOException {
+		LocalDateTime expiration = LocalDateTime.of(2031, 6, 7, 8, 9, 10);
+		byte[] bytes = write(AuthSnapshot.FORMAT_VERSION, 42L, "Dave", "$2a$10$hash", expiration,
+				Arrays.asList("ssh-ed25519 AAAAC3 one", "ssh-ed25519 AAAAC3 two"));
+
+		AuthSnapshot snapshot = AuthSnapshot.read(bytes);
+		assertEquals(GENERATED_AT, snapshot.getGeneratedAtMillis());
+		UserAuthRecord dave = snapshot.find("DAVE");
+		assertEquals(42L, dave.getUserId());
+		assertEquals("Dave", dave.getUsername());
+		assertEquals("$2a$10$hash", dave.getPasswordHash());
+		assertEquals(expiration, dave.getPasswordExpiration());
+		assertEquals(1, dave.getDirectoryMappings().size());
+		assertEquals("/home", dave.getDirectoryMappings().get(0).getEntry());
+		assertEquals("/bucket/dave", dave.getDirectoryMappings().get(0).getTarget());
+		assertTrue(dave.getDirectoryMappings().get(0).isWrite());
+		assertEquals(Arrays.asList("ssh-ed25519 AAAAC3 one", "ssh-ed25519 AAAAC3 two"), snapshot.getPublicKeys("dave"));
+	}
+
+	@Test
+	public void rejectsACorruptSnapshot() {
+		byte[] bytes = hex(GOLDEN);
+		bytes[20] ^= 1;
+		assertRejected(bytes, "checksum");
+	}
+
+	@Test
+	public void rejectsAnotherVersion() throws IOException {
+		assertRejected(write((short) (AuthSnapshot.FORMAT_VERSION + 1), 1L, "eve", "", null,
+				Collections.<String>emptyList()), "version");
+	}
+
+	@Test
+	public void rejectsATruncatedSnapshot() {
+		byte[] golden = hex(GOLDEN);
+		assertRejected(Arrays.copyOf(golden, golden.length - 10), null);
+		assertRejected(new byte[2], "truncated");
+	}
+
+	private static void assertRejected(byte[] bytes, String message) {
+		try {
+			AuthSnapshot.read(bytes);
+			fail("Read an invalid snapshot");
+		} catch (IOException e) {
+			if (message != null) {
+				assertTrue(e.getMessage(), e.getMessage().contains(message));
+			}
+		}
+	}
+
+	/**
+	 * Encodes a one-user snapshot the way the portal's AuthSnapshotWriter does.
+	 */
+	private static byte[] write(short version, long userId, String username, String passwordHash,
+			LocalDateTime expiration, List<String> publicKeys) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(AuthSnapshot.MAGIC);
+		out.writeShort(version);
+		out.writeLong(GENERATED_AT);
+		out.writeInt(1);
+		out.writeLong(userId);
+		out.writeUTF(username);
+		out.writeUTF(passwordHash);
+		out.writeLong(expiration == null ? Long.MIN_VALUE : expiration.toEpochSecond(ZoneOffset.UTC));
+		out.writeInt(1);
+		out.writeLong(1L);
+		out.writeUTF("/home");
+		out.writeUTF("/bucket/" + username.toLowerCase());
+		out.writeBoolean(true);
+		out.writeInt(publicKeys.size());
+		for (String publicKey : publicKeys) {
+			out.writeUTF(publicKey);
+		}
+		out.flush();
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeInt((int) crc.getValue());
+		return bytes.toByteArray();
+	}
+
+	private static byte[] hex(String hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+		}
+		return bytes;
+	}
+}